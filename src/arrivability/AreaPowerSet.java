@@ -0,0 +1,178 @@
+package arrivability;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Logger;
+
+/**
+ * The power set of a list of forbidden areas. Entry i is the union of the areas
+ * whose bits are set in i. All entries are stored in a single contiguous slab of
+ * words, and each entry is built from a smaller one with one OR per word.
+ */
+public final class AreaPowerSet {
+
+	private static final Logger logger = Logger.getLogger(AreaPowerSet.class.getName());
+	private static final int MAXIMUM_SIZE = 30;                // 2^30 entries is the most an int index can address
+	private static volatile int limit = 20;                     // the largest number of areas accepted
+	// statistics per number of areas
+	private static final AtomicLongArray builds = new AtomicLongArray(MAXIMUM_SIZE + 1);
+	private static final AtomicLongArray buildTime = new AtomicLongArray(MAXIMUM_SIZE + 1);
+	private static final AtomicLongArray buildMemory = new AtomicLongArray(MAXIMUM_SIZE + 1);
+	private final int size;                                     // number of areas
+	private final int words;                                    // number of words per entry
+	private final long[] slab;                                  // all unions, entry i starts at i * words
+
+	/**
+	 * Constructor
+	 * @param areas bitset representation of areas
+	 * @param numberOfBits the number of vertices in the failure group
+	 */
+	public AreaPowerSet(List<BitSet> areas, int numberOfBits) {
+		long startTime = System.nanoTime();
+		size = areas.size();
+		words = (numberOfBits + 63) >>> 6;
+		checkSize(size, words);
+		slab = new long[words << size];
+		for (int i = 0; i < size; ++i) {
+			long[] area = areas.get(i).toLongArray();
+			System.arraycopy(area, 0, slab, words << i, Math.min(area.length, words));
+		}
+		for (int i = 3; i < 1 << size; ++i) {
+			int rest = i & (i - 1);
+			if (rest == 0)
+				continue;
+			// i = rest + lowest bit, both of which are already built
+			int target = i * words, first = rest * words, second = (i & -i) * words;
+			for (int w = 0; w < words; ++w)
+				slab[target + w] = slab[first + w] | slab[second + w];
+		}
+		long duration = System.nanoTime() - startTime;
+		builds.incrementAndGet(size);
+		buildTime.addAndGet(size, duration);
+		buildMemory.addAndGet(size, memory());
+		logger.fine("Power set of " + size + " areas takes " + duration / 1000 + " microseconds and " + memory() + " bytes");
+	}
+
+	/**
+	 * Return the number of areas
+	 * @return the number of areas
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Return the number of entries, i.e., 2^size
+	 * @return the number of entries
+	 */
+	public int entries() {
+		return 1 << size;
+	}
+
+	/**
+	 * Return the number of words per entry
+	 * @return the number of words
+	 */
+	public int words() {
+		return words;
+	}
+
+	/**
+	 * Return the size of the slab in bytes
+	 * @return memory usage
+	 */
+	public long memory() {
+		return (long) slab.length * Long.BYTES;
+	}
+
+	/**
+	 * Compute the cardinality of the union of a subset of areas
+	 * @param subset bitmask of the subset
+	 * @return the cardinality of the union
+	 */
+	public int cardinality(int subset) {
+		int result = 0;
+		for (int w = subset * words, end = w + words; w < end; ++w)
+			result += Long.bitCount(slab[w]);
+		return result;
+	}
+
+	/**
+	 * Compute the cardinality of the union of a subset of areas and another area
+	 * @param subset bitmask of the subset
+	 * @param area another area in words, may be shorter than an entry
+	 * @return the cardinality of the union
+	 */
+	public int cardinality(int subset, long[] area) {
+		int result = 0, base = subset * words, common = Math.min(words, area.length);
+		for (int w = 0; w < common; ++w)
+			result += Long.bitCount(slab[base + w] | area[w]);
+		for (int w = common; w < words; ++w)
+			result += Long.bitCount(slab[base + w]);
+		return result;
+	}
+
+	/**
+	 * Compute the memory needed for a power set
+	 * @param n the number of areas
+	 * @param numberOfBits the number of vertices in the failure group
+	 * @return memory in bytes
+	 */
+	public static long memoryEstimate(int n, int numberOfBits) {
+		return ((long) (numberOfBits + 63) >>> 6) * Long.BYTES << n;
+	}
+
+	/**
+	 * Return the largest number of areas accepted
+	 * @return the limit
+	 */
+	public static int getLimit() {
+		return limit;
+	}
+
+	/**
+	 * Set the largest number of areas accepted
+	 * @param n the new limit
+	 */
+	public static void setLimit(int n) {
+		if (n < 0 || n > MAXIMUM_SIZE) {
+			logger.severe("Not a valid limit");
+			throw new IllegalArgumentException("Not a valid limit");
+		}
+		limit = n;
+	}
+
+	/**
+	 * Report the time and memory spent on power sets for each number of areas
+	 * @return a table of statistics
+	 */
+	public static String report() {
+		StringBuilder result = new StringBuilder("n builds average(us) average(bytes)\n");
+		for (int n = 0; n <= MAXIMUM_SIZE; ++n) {
+			long count = builds.get(n);
+			if (count == 0)
+				continue;
+			result.append(n + " " + count + " " + buildTime.get(n) / count / 1000 + " " + buildMemory.get(n) / count + "\n");
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Refuse power sets that are too large
+	 * @param n the number of areas
+	 * @param words the number of words per entry
+	 */
+	private static void checkSize(int n, int words) {
+		if (n > limit) {
+			String message = "Power set of " + n + " areas exceeds the limit of " + limit + " areas";
+			logger.severe(message);
+			throw new IllegalArgumentException(message);
+		}
+		if ((long) words << n > Integer.MAX_VALUE - 8) {
+			String message = "Power set of " + n + " areas needs " + memoryEstimate(n, words << 6) + " bytes, which cannot be addressed";
+			logger.severe(message);
+			throw new IllegalArgumentException(message);
+		}
+	}
+}
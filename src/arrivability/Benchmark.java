@@ -1,5 +1,6 @@
 package arrivability;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
@@ -264,6 +265,38 @@ public class Benchmark extends ConsoleHandler {
 	    System.out.println(String.format("Original: survivability %f time %f", avgAv, avgTime));
 	}
 	
+	/**
+	 * Compare replanning from a previous plan with planning from scratch after the failure
+	 * probability doubles and obstacles appear on the previous solution
+	 */
+	public static void testReplanning() {
+	    Duration budget = Duration.ofSeconds(10);
+	    double avgReplan = 0.0, avgScratch = 0.0, timeReplan = 0.0, timeScratch = 0.0;
+	    for (int i = 0; i < NUMBER_OF_TEST; ++i) {
+	        GridFailureGroup fg = new GridFailureGroup(ROW, COLUMN, MINE_RADIUS);
+	        Graph<Point> g = GraphLoader.getGraph("files/random_map");
+	        FailureRate model = new FixedRadius(fg, g, FAILURE_PROBABILITY);
+	        MaximizeArrivability ma = new MaximizeArrivability(g, model, NUMBER_OF_ROBOTS, NUMBER_OF_REQUEST, NUMBER_OF_GENERATE, PathGeneration.RANDOM, PathSelection.RANDOM, NUMBER_OF_ITERATIONS);
+	        Point source = new Point(ROW / 2, 0);
+	        Point target = new Point(ROW / 2, COLUMN - 1);
+	        Plan previous = ma.getSolution(source, target, budget);
+	        Delta delta = new Delta();
+	        delta.setFailure(2 * FAILURE_PROBABILITY);
+	        Path<Point> blocked = previous.getSolution().get(0);
+	        delta.addObstacle(blocked.get(blocked.size() / 2));
+	        long before = System.nanoTime();
+	        Plan replanned = ma.replan(previous, delta, budget);
+	        timeReplan += (System.nanoTime() - before) / 1000000.0;
+	        avgReplan += replanned.getArrivability();
+	        before = System.nanoTime();
+	        Plan scratch = ma.getSolution(source, target, budget);
+	        timeScratch += (System.nanoTime() - before) / 1000000.0;
+	        avgScratch += scratch.getArrivability();
+	    }
+	    System.out.println(String.format("Replanned: arrivability %f time %f", avgReplan / NUMBER_OF_TEST, timeReplan / NUMBER_OF_TEST));
+	    System.out.println(String.format("Scratch: arrivability %f time %f", avgScratch / NUMBER_OF_TEST, timeScratch / NUMBER_OF_TEST));
+	}
+	
 	public static void main( String[] args ) {
 		//demo_RandomRadius();
 		//demo_FixedRadius();
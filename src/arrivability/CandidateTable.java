@@ -0,0 +1,215 @@
+package arrivability;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+
+/**
+ * An append-only table of candidate paths. Each candidate is converted once to the
+ * indices of its vertices and the bitset of its forbidden area, so that a selection
+ * can be represented by indices into the table. Candidates are immutable and keep
+ * their indices; the table is appended by one thread while no search reads it.
+ */
+public final class CandidateTable {
+
+	private static final Logger logger = Logger.getLogger(CandidateTable.class.getName());
+	private final FailureRate fr;
+	private final List<Candidate> candidates;
+
+	/**
+	 * Constructor
+	 * @param fr failure rate computation
+	 * @param paths candidate paths
+	 */
+	public CandidateTable(FailureRate fr, List<Path<Point>> paths) {
+		long startTime = System.nanoTime();
+		this.fr = fr;
+		candidates = new ArrayList<>(paths.size());
+		for (Path<Point> path : paths)
+			add(path);
+		logger.fine("Candidate table of " + candidates.size() + " paths takes " + (System.nanoTime() - startTime) / 1000 + " microseconds");
+	}
+
+	/**
+	 * Append a candidate
+	 * @param path the path
+	 * @return the new candidate
+	 */
+	public Candidate add(Path<Point> path) {
+		int[] vertices = fr.fromPathToIndices(path);
+		Candidate candidate = new Candidate(candidates.size(), path, vertices, fr.forbiddenArea(vertices));
+		candidates.add(candidate);
+		return candidate;
+	}
+
+	/**
+	 * Create a table for a model on the same failure group with the candidates accepted by a
+	 * filter. Forbidden areas depend only on the failure group, so the kept candidates share
+	 * their indices of vertices and areas with this table and are only renumbered.
+	 * @param model failure rate computation of the new table
+	 * @param filter test of the paths to be kept
+	 * @return a new table
+	 */
+	public CandidateTable retain(FailureRate model, Predicate<Path<Point>> filter) {
+		if (model.fg != fr.fg) {
+			logger.severe("Not the same failure group");
+			throw new IllegalArgumentException("Not the same failure group");
+		}
+		CandidateTable result = new CandidateTable(model, Collections.emptyList());
+		for (Candidate candidate : candidates)
+			if (filter.test(candidate.path))
+				result.candidates.add(new Candidate(result.candidates.size(), candidate));
+		return result;
+	}
+
+	/**
+	 * Return the number of candidates
+	 * @return the number of candidates
+	 */
+	public int size() {
+		return candidates.size();
+	}
+
+	/**
+	 * Return a candidate
+	 * @param id index of the candidate
+	 * @return the candidate
+	 */
+	public Candidate get(int id) {
+		return candidates.get(id);
+	}
+
+	/**
+	 * Find a candidate with a path
+	 * @param path the path
+	 * @return the index of the first candidate with an equal path, -1 if none
+	 */
+	public int indexOf(Path<Point> path) {
+		for (Candidate candidate : candidates)
+			if (candidate.path.equals(path))
+				return candidate.id;
+		return -1;
+	}
+
+	/**
+	 * Convert a selection to paths
+	 * @param selection indices of candidates
+	 * @return a list of paths
+	 */
+	public List<Path<Point>> paths(int[] selection) {
+		List<Path<Point>> result = new ArrayList<>(selection.length);
+		for (int id : selection)
+			result.add(candidates.get(id).getPath());
+		return result;
+	}
+
+	/**
+	 * Convert a selection to forbidden areas
+	 * @param selection indices of candidates
+	 * @return a list of bitsets
+	 */
+	public List<BitSet> areas(int[] selection) {
+		List<BitSet> result = new ArrayList<>(selection.length);
+		for (int id : selection)
+			result.add(candidates.get(id).getArea());
+		return result;
+	}
+
+	/**
+	 * A candidate path with its precomputed forbidden area
+	 */
+	public static final class Candidate {
+		private final int id;
+		private final Path<Point> path;
+		private final int[] vertices;          // indices in the failure group
+		private final long[] area;             // forbidden area in words
+		private final int cardinality;
+
+		/**
+		 * Constructor
+		 * @param id index in the table
+		 * @param path the path
+		 * @param vertices indices of vertices in the failure group
+		 * @param area forbidden area
+		 */
+		private Candidate(int id, Path<Point> path, int[] vertices, BitSet area) {
+			this.id = id;
+			this.path = path;
+			this.vertices = vertices;
+			this.area = area.toLongArray();
+			this.cardinality = area.cardinality();
+		}
+
+		/**
+		 * Constructor, sharing the vertices and the area of another candidate
+		 * @param id index in the table
+		 * @param other another candidate
+		 */
+		private Candidate(int id, Candidate other) {
+			this.id = id;
+			this.path = other.path;
+			this.vertices = other.vertices;
+			this.area = other.area;
+			this.cardinality = other.cardinality;
+		}
+
+		/**
+		 * Return the index in the table
+		 * @return the index
+		 */
+		public int getId() {
+			return id;
+		}
+
+		/**
+		 * Return the path
+		 * @return the path
+		 */
+		public Path<Point> getPath() {
+			return path;
+		}
+
+		/**
+		 * Return the indices of vertices in the failure group
+		 * @return a copy of the indices
+		 */
+		public int[] getVertices() {
+			return vertices.clone();
+		}
+
+		/**
+		 * Return the indices of vertices without copying, must not be modified
+		 * @return the indices of vertices
+		 */
+		int[] vertices() {
+			return vertices;
+		}
+
+		/**
+		 * Return the forbidden area
+		 * @return a copy of the forbidden area
+		 */
+		public BitSet getArea() {
+			return BitSet.valueOf(area);
+		}
+
+		/**
+		 * Return the forbidden area in words without copying, must not be modified
+		 * @return the words of the forbidden area
+		 */
+		long[] words() {
+			return area;
+		}
+
+		/**
+		 * Return the size of the forbidden area
+		 * @return the cardinality
+		 */
+		public int getCardinality() {
+			return cardinality;
+		}
+	}
+}
@@ -0,0 +1,192 @@
+package arrivability;
+
+import java.util.logging.Logger;
+
+/**
+ * Confidence intervals for a binomial proportion
+ */
+public final class ConfidenceInterval {
+
+	public static final int WILSON = 0;
+	public static final int CLOPPER_PEARSON = 1;
+	public static final String names[] = {"Wilson", "Clopper-Pearson"};
+
+	private static final Logger logger = Logger.getLogger(ConfidenceInterval.class.getName());
+	private static final int MAX_ITERATIONS = 100000;
+	private static final double PRECISION = 1e-12;
+
+	private ConfidenceInterval() { }
+
+	/**
+	 * Compute a confidence interval for a binomial proportion
+	 * @param method WILSON or CLOPPER_PEARSON
+	 * @param successes the number of successes
+	 * @param trials the number of trials
+	 * @param confidence confidence level, e.g., 0.95
+	 * @return lower and upper bounds
+	 */
+	public static double[] of(int method, long successes, long trials, double confidence) {
+		if (trials <= 0 || successes < 0 || successes > trials) {
+			logger.severe("Not a valid number of successes");
+			throw new IllegalArgumentException("Not a valid number of successes");
+		}
+		if (!(confidence > 0 && confidence < 1)) {
+			logger.severe("Not a valid confidence level");
+			throw new IllegalArgumentException("Not a valid confidence level");
+		}
+		switch (method) {
+			case WILSON:
+				return wilson(successes, trials, confidence);
+			case CLOPPER_PEARSON:
+				return clopperPearson(successes, trials, confidence);
+		}
+		logger.severe("Unknown interval " + method);
+		throw new IllegalArgumentException("Unknown interval " + method);
+	}
+
+	/**
+	 * Wilson score interval
+	 * @param successes the number of successes
+	 * @param trials the number of trials
+	 * @param confidence confidence level
+	 * @return lower and upper bounds
+	 */
+	private static double[] wilson(long successes, long trials, double confidence) {
+		double z = normalQuantile(1 - (1 - confidence) / 2), z2 = z * z, n = trials;
+		double p = successes / n;
+		double denominator = 1 + z2 / n;
+		double center = (p + z2 / (2 * n)) / denominator;
+		double halfWidth = z / denominator * Math.sqrt(p * (1 - p) / n + z2 / (4 * n * n));
+		return new double[]{Math.max(0.0, center - halfWidth), Math.min(1.0, center + halfWidth)};
+	}
+
+	/**
+	 * Clopper-Pearson exact interval
+	 * @param successes the number of successes
+	 * @param trials the number of trials
+	 * @param confidence confidence level
+	 * @return lower and upper bounds
+	 */
+	private static double[] clopperPearson(long successes, long trials, double confidence) {
+		double alpha = 1 - confidence;
+		double lower = successes == 0 ? 0.0 : betaQuantile(alpha / 2, successes, trials - successes + 1);
+		double upper = successes == trials ? 1.0 : betaQuantile(1 - alpha / 2, successes + 1, trials - successes);
+		return new double[]{lower, upper};
+	}
+
+	/**
+	 * Quantile of the standard normal distribution (Acklam's rational approximation)
+	 * @param p probability
+	 * @return the quantile
+	 */
+	public static double normalQuantile(double p) {
+		final double[] a = {-3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02,
+				1.383577518672690e+02, -3.066479806614716e+01, 2.506628277459239e+00};
+		final double[] b = {-5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02,
+				6.680131188771972e+01, -1.328068155288572e+01};
+		final double[] c = {-7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00,
+				-2.549732539343734e+00, 4.374664141464968e+00, 2.938163982698783e+00};
+		final double[] d = {7.784695709041462e-03, 3.224671290700398e-01, 2.445134137142996e+00,
+				3.754408661907416e+00};
+		if (p <= 0)
+			return Double.NEGATIVE_INFINITY;
+		if (p >= 1)
+			return Double.POSITIVE_INFINITY;
+		if (p < 0.02425) {
+			double q = Math.sqrt(-2 * Math.log(p));
+			return (((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5])
+					/ ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+		}
+		if (p > 1 - 0.02425)
+			return -normalQuantile(1 - p);
+		double q = p - 0.5, r = q * q;
+		return (((((a[0] * r + a[1]) * r + a[2]) * r + a[3]) * r + a[4]) * r + a[5]) * q
+				/ (((((b[0] * r + b[1]) * r + b[2]) * r + b[3]) * r + b[4]) * r + 1);
+	}
+
+	/**
+	 * Quantile of the beta distribution by bisection
+	 * @param p probability
+	 * @param a first shape parameter
+	 * @param b second shape parameter
+	 * @return the quantile
+	 */
+	private static double betaQuantile(double p, double a, double b) {
+		double low = 0.0, high = 1.0;
+		while (high - low > PRECISION) {
+			double middle = (low + high) / 2;
+			if (regularizedBeta(middle, a, b) < p)
+				low = middle;
+			else
+				high = middle;
+		}
+		return (low + high) / 2;
+	}
+
+	/**
+	 * Regularized incomplete beta function I_x(a, b)
+	 * @param x a value in [0, 1]
+	 * @param a first shape parameter
+	 * @param b second shape parameter
+	 * @return I_x(a, b)
+	 */
+	private static double regularizedBeta(double x, double a, double b) {
+		if (x <= 0)
+			return 0.0;
+		if (x >= 1)
+			return 1.0;
+		double front = Math.exp(logGamma(a + b) - logGamma(a) - logGamma(b) + a * Math.log(x) + b * Math.log1p(-x));
+		// the continued fraction converges quickly only on one side of the mean
+		if (x < (a + 1) / (a + b + 2))
+			return front * continuedFraction(x, a, b) / a;
+		return 1 - front * continuedFraction(1 - x, b, a) / b;
+	}
+
+	/**
+	 * Continued fraction of the incomplete beta function by modified Lentz's method
+	 * @param x a value in [0, 1]
+	 * @param a first shape parameter
+	 * @param b second shape parameter
+	 * @return the continued fraction
+	 */
+	private static double continuedFraction(double x, double a, double b) {
+		final double tiny = 1e-300;
+		double c = 1.0, d = 1 - (a + b) * x / (a + 1);
+		d = 1 / (Math.abs(d) < tiny ? tiny : d);
+		double result = d;
+		for (int m = 1; m <= MAX_ITERATIONS; ++m) {
+			double numerator = m * (b - m) * x / ((a + 2 * m - 1) * (a + 2 * m));
+			d = 1 + numerator * d;
+			c = 1 + numerator / c;
+			d = 1 / (Math.abs(d) < tiny ? tiny : d);
+			c = Math.abs(c) < tiny ? tiny : c;
+			result *= d * c;
+			numerator = -(a + m) * (a + b + m) * x / ((a + 2 * m) * (a + 2 * m + 1));
+			d = 1 + numerator * d;
+			c = 1 + numerator / c;
+			d = 1 / (Math.abs(d) < tiny ? tiny : d);
+			c = Math.abs(c) < tiny ? tiny : c;
+			double delta = d * c;
+			result *= delta;
+			if (Math.abs(delta - 1) < PRECISION)
+				break;
+		}
+		return result;
+	}
+
+	/**
+	 * Logarithm of the gamma function (Lanczos approximation)
+	 * @param x a positive value
+	 * @return log(Gamma(x))
+	 */
+	private static double logGamma(double x) {
+		final double[] coefficient = {76.18009172947146, -86.50532032941677, 24.01409824083091,
+				-1.231739572450155, 0.1208650973866179e-2, -0.5395239384953e-5};
+		double y = x, temp = x + 5.5;
+		temp -= (x + 0.5) * Math.log(temp);
+		double series = 1.000000000190015;
+		for (double c : coefficient)
+			series += c / ++y;
+		return -temp + Math.log(2.5066282746310005 * series / x);
+	}
+}
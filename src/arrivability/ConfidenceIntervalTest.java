@@ -0,0 +1,45 @@
+package arrivability;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class ConfidenceIntervalTest {
+
+	@Test
+	public void testWilson() {
+		double[] bounds = ConfidenceInterval.of(ConfidenceInterval.WILSON, 5, 10, 0.95);
+		assertEquals(0.2366, bounds[0], 1e-4);
+		assertEquals(0.7634, bounds[1], 1e-4);
+		// no successes, the upper bound is z^2 / (n + z^2)
+		bounds = ConfidenceInterval.of(ConfidenceInterval.WILSON, 0, 10, 0.95);
+		assertEquals(0.0, bounds[0], 1e-12);
+		assertEquals(0.2775, bounds[1], 1e-4);
+	}
+	
+	@Test
+	public void testClopperPearson() {
+		double[] bounds = ConfidenceInterval.of(ConfidenceInterval.CLOPPER_PEARSON, 5, 10, 0.95);
+		assertEquals(0.1871, bounds[0], 1e-4);
+		assertEquals(0.8129, bounds[1], 1e-4);
+		bounds = ConfidenceInterval.of(ConfidenceInterval.CLOPPER_PEARSON, 1, 100, 0.95);
+		assertEquals(0.000253, bounds[0], 1e-6);
+		assertEquals(0.05446, bounds[1], 1e-5);
+		// no successes or no failures, the bound is 1 - (alpha / 2)^(1 / n)
+		for (int n : new int[]{1, 10, 1000}) {
+			bounds = ConfidenceInterval.of(ConfidenceInterval.CLOPPER_PEARSON, 0, n, 0.95);
+			assertEquals(0.0, bounds[0], 1e-12);
+			assertEquals(1 - Math.pow(0.025, 1.0 / n), bounds[1], 1e-9);
+			bounds = ConfidenceInterval.of(ConfidenceInterval.CLOPPER_PEARSON, n, n, 0.95);
+			assertEquals(Math.pow(0.025, 1.0 / n), bounds[0], 1e-9);
+			assertEquals(1.0, bounds[1], 1e-12);
+		}
+	}
+	
+	@Test
+	public void testNormalQuantile() {
+		assertEquals(1.959964, ConfidenceInterval.normalQuantile(0.975), 1e-6);
+		assertEquals(-2.326348, ConfidenceInterval.normalQuantile(0.01), 1e-6);
+		assertEquals(0.0, ConfidenceInterval.normalQuantile(0.5), 1e-12);
+	}
+}
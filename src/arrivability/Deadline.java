@@ -0,0 +1,69 @@
+package arrivability;
+
+import java.util.logging.Logger;
+
+/**
+ * A wall-clock deadline measured by System.nanoTime
+ */
+public final class Deadline {
+
+	private static final Logger logger = Logger.getLogger(Deadline.class.getName());
+	private final long startTime;
+	private final long budget;               // nanoseconds, Long.MAX_VALUE for no deadline
+
+	/**
+	 * Constructor
+	 * @param nanoseconds the budget from now
+	 */
+	public Deadline(long nanoseconds) {
+		if (nanoseconds < 0) {
+			logger.severe("Not a valid budget");
+			throw new IllegalArgumentException("Not a valid budget");
+		}
+		startTime = System.nanoTime();
+		budget = nanoseconds;
+	}
+
+	/**
+	 * Create a deadline that never expires
+	 * @return a deadline
+	 */
+	public static Deadline none() {
+		return new Deadline(Long.MAX_VALUE);
+	}
+
+	/**
+	 * Test whether the deadline has passed
+	 * @return true if the deadline has passed, false otherwise
+	 */
+	public boolean expired() {
+		return elapsed() >= budget;
+	}
+
+	/**
+	 * Return the time left before the deadline
+	 * @return nanoseconds left, 0 if expired
+	 */
+	public long remaining() {
+		return Math.max(0, budget - elapsed());
+	}
+
+	/**
+	 * Return the time since the deadline was created
+	 * @return nanoseconds elapsed
+	 */
+	public long elapsed() {
+		return System.nanoTime() - startTime;
+	}
+
+	/**
+	 * Create a deadline for a fraction of the remaining time, but not later than this one
+	 * @param fraction a fraction in [0, 1]
+	 * @return a deadline
+	 */
+	public Deadline fraction(double fraction) {
+		if (budget == Long.MAX_VALUE)
+			return none();
+		return new Deadline((long) (remaining() * Math.max(0.0, Math.min(1.0, fraction))));
+	}
+}
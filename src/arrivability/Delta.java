@@ -0,0 +1,109 @@
+package arrivability;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * A change of the map or the model between two plans: vertices blocked by new obstacles,
+ * vertices opened by removed obstacles, and a new failure probability
+ */
+public final class Delta {
+
+	private static final Logger logger = Logger.getLogger(Delta.class.getName());
+	private final Set<Point> blocked = new LinkedHashSet<>();
+	private final Map<Point, List<Point>> opened = new LinkedHashMap<>();    // opened vertices and their neighbors
+	private double failure = Double.NaN;                                     // NaN if the probability is kept
+
+	/**
+	 * Block a vertex of the graph by an obstacle
+	 * @param vertex the vertex
+	 */
+	public void addObstacle(Point vertex) {
+		opened.remove(vertex);
+		blocked.add(vertex);
+	}
+
+	/**
+	 * Open a vertex by removing an obstacle
+	 * @param vertex the vertex, not in the graph
+	 * @param neighbors vertices adjacent to the vertex, in the graph or opened
+	 */
+	public void removeObstacle(Point vertex, Collection<Point> neighbors) {
+		blocked.remove(vertex);
+		opened.put(vertex, new ArrayList<>(neighbors));
+	}
+
+	/**
+	 * Change the failure probability of each vertex
+	 * @param failure failure probability for each vertex
+	 */
+	public void setFailure(double failure) {
+		if (!Double.isFinite(failure) || failure < 0 || failure > 1) {
+			logger.severe("Not a valid probaiblity");
+			throw new IllegalArgumentException("Not a valid probaiblity");
+		}
+		this.failure = failure;
+	}
+
+	/**
+	 * Return the blocked vertices
+	 * @return an unmodifiable set of vertices
+	 */
+	public Set<Point> getObstacles() {
+		return Collections.unmodifiableSet(blocked);
+	}
+
+	/**
+	 * Test whether the graph changes
+	 * @return true if some vertex is blocked or opened, false otherwise
+	 */
+	public boolean changesMap() {
+		return !blocked.isEmpty() || !opened.isEmpty();
+	}
+
+	/**
+	 * Apply the change to a graph and a model. The change is checked against the graph
+	 * before anything is modified, and the distance cache of a changed graph is reset.
+	 * @param g the graph
+	 * @param model the failure rate computation
+	 */
+	void apply(Graph<Point> g, FailureRate model) {
+		for (Point vertex : blocked) {
+			if (!g.contains(vertex)) {
+				logger.severe("Block a non-existing vertex " + vertex);
+				throw new IllegalArgumentException("Block a non-existing vertex " + vertex);
+			}
+		}
+		for (Map.Entry<Point, List<Point>> entry : opened.entrySet()) {
+			if (g.contains(entry.getKey())) {
+				logger.severe("Open an existing vertex " + entry.getKey());
+				throw new IllegalArgumentException("Open an existing vertex " + entry.getKey());
+			}
+			for (Point neighbor : entry.getValue()) {
+				if (blocked.contains(neighbor) || !g.contains(neighbor) && !opened.containsKey(neighbor)) {
+					logger.severe("Not a valid neighbor " + neighbor);
+					throw new IllegalArgumentException("Not a valid neighbor " + neighbor);
+				}
+			}
+		}
+		if (!Double.isNaN(failure))
+			model.setFailure(failure);
+		for (Point vertex : opened.keySet())
+			g.addVertex(vertex);
+		for (Map.Entry<Point, List<Point>> entry : opened.entrySet())
+			for (Point neighbor : entry.getValue())
+				g.addEdge(entry.getKey(), neighbor);
+		for (Point vertex : blocked)
+			g.removeVertex(vertex);
+		if (changesMap())
+			g.reset();
+		logger.info("Applied " + blocked.size() + " new obstacles and " + opened.size() + " removed obstacles");
+	}
+}
@@ -0,0 +1,52 @@
+package arrivability;
+
+/**
+ * A stochastic estimate together with its standard error
+ */
+public final class Estimate {
+	
+	private final double mean;
+	private final double standardError;
+	private final long samples;
+	
+	/**
+	 * Constructor
+	 * @param m estimated value
+	 * @param se standard error of the estimated value
+	 * @param n number of samples
+	 */
+	public Estimate(double m, double se, long n) {
+		mean = m;
+		standardError = se;
+		samples = n;
+	}
+	
+	/**
+	 * Return the estimated value
+	 * @return the estimated value
+	 */
+	public double getMean() {
+		return mean;
+	}
+	
+	/**
+	 * Return the standard error
+	 * @return the standard error
+	 */
+	public double getStandardError() {
+		return standardError;
+	}
+	
+	/**
+	 * Return the number of samples
+	 * @return the number of samples
+	 */
+	public long getSamples() {
+		return samples;
+	}
+	
+	@Override
+	public String toString() {
+		return mean + " +/- " + standardError + " (" + samples + " samples)";
+	}
+}
@@ -1,5 +1,6 @@
 package arrivability;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collection;
@@ -7,13 +8,32 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 public abstract class FailureRate {
+	
+	public static final int EXACT = 0;
+	public static final int APPROXIMATE = 1;
+	public static final int AUTOMATIC = 2;
+	public static final String evaluatorNames[] = {"Exact", "Approximate", "Automatic"};
+	
 	private static final Logger logger = Logger.getLogger(FailureRate.class.getName());
+	private static final long SEED = 0x5DEECE66DL;   // common random numbers for all approximations
+	private static final double TRIAL_COST = 200.0;  // rough nanoseconds per Monte Carlo trial
+	private int evaluator = AUTOMATIC;
+	private long latencyBudget = 10000000L;          // nanoseconds per evaluation
+	private double halfWidth = 1e-3;                 // target half width of approximations
+	private double confidence = 0.95;
+	private boolean pairedComparison = false;        // whether swaps of estimates are decided by paired trials
+	private final AtomicLong exactEvaluations = new AtomicLong();
+	private final AtomicLong approximateEvaluations = new AtomicLong();
+	private final ThreadLocal<Integer> lastEvaluator = ThreadLocal.withInitial(() -> EXACT);
 	protected FailureGroup<Point> fg;
 	protected Graph<Point> g;
 	protected Map<Point, Integer> indexMap = new HashMap<>();
+	protected int[][] forbiddenIndex;        // forbidden areas by index in the failure group
 	
 	/**
 	 * 
@@ -28,6 +48,9 @@ public abstract class FailureRate {
 			indexMap.put(point, i);
 			++i;
 		}
+		forbiddenIndex = new int[i][];
+		for (Point point : fg.vertexSet())
+			forbiddenIndex[indexMap.get(point)] = fg.getForbiddenArea(point).stream().mapToInt(indexMap::get).toArray();
 	}
 	
 	/**
@@ -45,6 +68,205 @@ public abstract class FailureRate {
 	 */
 	abstract public double arrivability(List<Path<Point>> paths, int request);
 	
+	/**
+	 * Create a Monte Carlo engine for a set of paths
+	 * @param paths a set of paths
+	 * @return Monte Carlo engine
+	 */
+	abstract public MonteCarlo monteCarlo(List<Path<Point>> paths);
+	
+	/**
+	 * Estimate the running time of the exact arrivability of a set of paths
+	 * @param paths a set of paths
+	 * @param request number of requested robots
+	 * @return estimated nanoseconds, infinity if the exact computation is not possible
+	 */
+	abstract protected double exactCost(List<Path<Point>> paths, int request);
+
+	/**
+	 * Change the failure probability of each vertex. The indices and forbidden areas of the
+	 * failure group are kept, so forbidden areas computed before remain valid; only the tables
+	 * derived from the probability are rebuilt. Must not be called during an evaluation.
+	 * @param failure failure probability for each vertex
+	 */
+	abstract public void setFailure(double failure);
+	
+	/**
+	 * Evaluate the arrivability of a set of paths with the evaluator policy. The automatic
+	 * policy computes the exact arrivability when its estimated cost is within the latency
+	 * budget, and a Monte Carlo estimate with bounded half width otherwise.
+	 * @param paths a set of paths
+	 * @param request number of requested robots
+	 * @return the arrivability
+	 */
+	public double evaluate(List<Path<Point>> paths, int request) {
+		if (preferExact(paths, request)) {
+			exactEvaluations.incrementAndGet();
+			lastEvaluator.set(EXACT);
+			return arrivability(paths, request);
+		}
+		approximateEvaluations.incrementAndGet();
+		lastEvaluator.set(APPROXIMATE);
+		// a fixed seed makes the estimate a deterministic function of the paths,
+		// so local search compares solutions under common random numbers
+		return monteCarlo(paths).estimate(request, halfWidth, confidence, ConfidenceInterval.WILSON, maxTrials(), SEED).getMean();
+	}
+	
+	/**
+	 * Decide whether a set of paths has higher arrivability than another, as one of several
+	 * comparisons against the same solution. When evaluate computes exact arrivability, both
+	 * sets are evaluated. Otherwise, if paired comparisons are enabled, both are run against
+	 * the same blockers in Monte Carlo trials, which stop as soon as the trials where only one
+	 * set survives decide whether candidate is better by more than the target half width. The
+	 * error budget is split over all comparisons, so a worse candidate is accepted in one of
+	 * them with probability at most 1 - confidence, and an accepted candidate must also have a
+	 * higher estimate from evaluate, which keeps a local search from cycling. An undecided
+	 * comparison counts as not better.
+	 * @param candidate a set of paths
+	 * @param current another set of paths
+	 * @param request number of requested robots
+	 * @param comparisons the number of comparisons sharing the error budget
+	 * @return true if candidate is better, false otherwise
+	 */
+	public boolean isBetter(List<Path<Point>> candidate, List<Path<Point>> current, int request, int comparisons) {
+		if (comparisons < 1) {
+			logger.severe("Not a valid number of comparisons");
+			throw new IllegalArgumentException("Not a valid number of comparisons");
+		}
+		if (!pairedComparison || preferExact(current, request) || candidate.size() + current.size() > Long.SIZE)
+			return evaluate(candidate, request) > evaluate(current, request) + MaximizeArrivability.EPSILON;
+		approximateEvaluations.incrementAndGet();
+		lastEvaluator.set(APPROXIMATE);
+		List<Path<Point>> paths = new ArrayList<>(candidate);
+		paths.addAll(current);
+		double level = 1 - (1 - confidence) / comparisons;
+		if (monteCarlo(paths).compare(candidate.size(), request, halfWidth, level, maxTrials(), SEED) <= 0)
+			return false;
+		return evaluate(candidate, request) > evaluate(current, request) + MaximizeArrivability.EPSILON;
+	}
+	
+	/**
+	 * Test whether local searches decide swaps of estimated solutions by paired comparisons
+	 * @return true if paired comparisons are enabled, false otherwise
+	 */
+	public boolean usesPairedComparison() {
+		return pairedComparison;
+	}
+	
+	/**
+	 * Enable paired comparisons of estimated solutions. Local searches then take the first
+	 * swap decided to be better instead of the best swap by estimates of bounded half width,
+	 * which is faster but may stop at a worse local optimum.
+	 * @param enabled whether paired comparisons are used
+	 */
+	public void setPairedComparison(boolean enabled) {
+		pairedComparison = enabled;
+	}
+	
+	/**
+	 * Decide whether first has higher arrivability than second by Monte Carlo with common random numbers
+	 * @param first a set of paths
+	 * @param second another set of paths
+	 * @param request the number of request robots
+	 * @param confidence confidence level of the decision
+	 * @param maxTrials the maximum number of trials
+	 * @return 1 if first is better, -1 if second is better, 0 if undecided
+	 */
+	public int compareByMonteCarlo(List<Path<Point>> first, List<Path<Point>> second, int request, double confidence, int maxTrials) {
+		List<Path<Point>> paths = new ArrayList<>(first);
+		paths.addAll(second);
+		return monteCarlo(paths).compare(first.size(), request, confidence, maxTrials, new SplittableRandom().nextLong());
+	}
+	
+	/**
+	 * Return the number of Monte Carlo trials that fits in the latency budget
+	 * @return the maximum number of trials of one evaluation
+	 */
+	private int maxTrials() {
+		return (int) Math.max(4096, Math.min(Integer.MAX_VALUE, latencyBudget / TRIAL_COST));
+	}
+	
+	/**
+	 * Test whether evaluate computes the exact arrivability of a set of paths
+	 * @param paths a set of paths
+	 * @param request number of requested robots
+	 * @return true if the exact arrivability is computed, false otherwise
+	 */
+	public boolean preferExact(List<Path<Point>> paths, int request) {
+		switch (evaluator) {
+			case EXACT:
+				return true;
+			case APPROXIMATE:
+				return false;
+		}
+		double cost = exactCost(paths, request);
+		if (cost > latencyBudget)
+			logger.fine("Exact arrivability of " + paths.size() + " paths takes about " + (long) cost + " nanoseconds, use Monte Carlo");
+		return cost <= latencyBudget;
+	}
+	
+	/**
+	 * Set the evaluator policy
+	 * @param policy EXACT, APPROXIMATE or AUTOMATIC
+	 */
+	public void setEvaluator(int policy) {
+		if (policy < EXACT || policy > AUTOMATIC) {
+			logger.severe("Unknown evaluator " + policy);
+			throw new IllegalArgumentException("Unknown evaluator " + policy);
+		}
+		evaluator = policy;
+	}
+	
+	/**
+	 * Set the latency budget of one evaluation
+	 * @param nanoseconds the budget
+	 */
+	public void setLatencyBudget(long nanoseconds) {
+		if (nanoseconds < 0) {
+			logger.severe("Not a valid latency budget");
+			throw new IllegalArgumentException("Not a valid latency budget");
+		}
+		latencyBudget = nanoseconds;
+	}
+	
+	/**
+	 * Set the precision of Monte Carlo estimates
+	 * @param arg_halfWidth target half width of the confidence interval
+	 * @param arg_confidence confidence level
+	 */
+	public void setPrecision(double arg_halfWidth, double arg_confidence) {
+		if (!(arg_halfWidth > 0) || !(arg_confidence > 0 && arg_confidence < 1)) {
+			logger.severe("Not a valid precision");
+			throw new IllegalArgumentException("Not a valid precision");
+		}
+		halfWidth = arg_halfWidth;
+		confidence = arg_confidence;
+	}
+	
+	/**
+	 * Return the evaluator used by the last evaluation in the current thread
+	 * @return EXACT or APPROXIMATE
+	 */
+	public int getLastEvaluator() {
+		return lastEvaluator.get();
+	}
+	
+	/**
+	 * Return the number of exact evaluations
+	 * @return the number of exact evaluations
+	 */
+	public long getExactEvaluations() {
+		return exactEvaluations.get();
+	}
+	
+	/**
+	 * Return the number of approximate evaluations
+	 * @return the number of approximate evaluations
+	 */
+	public long getApproximateEvaluations() {
+		return approximateEvaluations.get();
+	}
+	
 	
 	
 	/**
@@ -122,6 +344,49 @@ public abstract class FailureRate {
 		return g.unweightedDistance(vertexset, target);
 	}
 	
+	/**
+	 * Compute the minimum distance (number of edges in the failure group) from a vertex set to all vertices
+	 * @param vertexset a vertex set
+	 * @return distance indexed by the failure group, Integer.MAX_VALUE if unreachable
+	 */
+	public int[] distanceField(Iterable<Point> vertexset) {
+		return distanceField(vertexset, Integer.MAX_VALUE);
+	}
+	
+	/**
+	 * Compute the minimum distance from a vertex set to all vertices within a limit
+	 * @param vertexset a vertex set
+	 * @param limit vertices at this distance are not expanded
+	 * @return distance indexed by the failure group, Integer.MAX_VALUE if farther than the limit
+	 */
+	public int[] distanceField(Iterable<Point> vertexset, int limit) {
+		int[] distance = new int[forbiddenIndex.length];
+		Arrays.fill(distance, Integer.MAX_VALUE);
+		int[] queue = new int[forbiddenIndex.length];
+		int head = 0, tail = 0;
+		for (Point point : vertexset) {
+			Integer index = indexMap.get(point);
+			if (index == null)
+				throw new IllegalArgumentException("Path does not exist");
+			if (distance[index] != 0) {
+				distance[index] = 0;
+				queue[tail++] = index;
+			}
+		}
+		while (head < tail) {
+			int node = queue[head++];
+			if (distance[node] >= limit)
+				break;
+			for (int neighbor : forbiddenIndex[node]) {
+				if (distance[neighbor] == Integer.MAX_VALUE) {
+					distance[neighbor] = distance[node] + 1;
+					queue[tail++] = neighbor;
+				}
+			}
+		}
+		return distance;
+	}
+	
 	/**
 	 * Test whether a point is a real node
 	 * @param point a point
@@ -190,11 +455,49 @@ public abstract class FailureRate {
 	 */
 	public BitSet fromPathToBitSet(Path<Point> path) {
 		BitSet result = new BitSet(fg.vertexSet().size());
+		for (Point point : path)
+			addForbiddenArea(result, point);
+		return result;
+	}
+	
+	/**
+	 * Add the forbidden area of a vertex to a bitset
+	 * @param area a bitset representing an area
+	 * @param point a vertex
+	 */
+	public void addForbiddenArea(BitSet area, Point point) {
+		for (int neighbor : forbiddenIndex[indexMap.get(point)])
+			area.set(neighbor);
+	}
+	
+	/**
+	 * Convert a path to the indices of its vertices in the failure group
+	 * @param path a path
+	 * @return indices of vertices in order
+	 */
+	public int[] fromPathToIndices(Path<Point> path) {
+		int[] result = new int[path.size()];
+		int i = 0;
 		for (Point point : path) {
-			for (Point neighbor : fg.getForbiddenArea(point)) {
-				int index = indexMap.get(neighbor);
-				result.set(index);
-			}
+			Integer index = indexMap.get(point);
+			if (index == null)
+				throw new IllegalArgumentException("Path does not exist");
+			result[i++] = index;
+		}
+		return result;
+	}
+	
+	/**
+	 * Compute the forbidden area of vertices given by indices
+	 * @param vertices indices of vertices in the failure group
+	 * @return a bitset corresponding to forbidden area
+	 */
+	public BitSet forbiddenArea(int[] vertices) {
+		BitSet result = new BitSet(forbiddenIndex.length);
+		for (int vertex : vertices) {
+			result.set(vertex);
+			for (int neighbor : forbiddenIndex[vertex])
+				result.set(neighbor);
 		}
 		return result;
 	}
@@ -202,21 +505,26 @@ public abstract class FailureRate {
 	/**
 	 * Convert from forbidden areas to super set of bitsets
 	 * @param forbiddenAreas a list of forbidden areas
-	 * @return a list of bitsets
+	 * @return the power set of the areas
 	 */
-	public List<BitSet> fromAreasToBitSuperSets(List<Collection<Point>> forbiddenAreas) { 
-		BitSet[] temp = new BitSet[forbiddenAreas.size()];
-		for (int i = 0; i < forbiddenAreas.size(); ++i)
-			temp[i] = fromAreaToBitSet(forbiddenAreas.get(i));
-		BitSet[] result = new BitSet[1 << forbiddenAreas.size()];
-		for (int i = 0; i < 1 << forbiddenAreas.size(); ++i) {
-			result[i] = new BitSet(fg.vertexSet().size());
-			for (int j = 0; j < forbiddenAreas.size(); ++j) {
-				if (((i >> j) & 1) == 1) {
-					result[i].or(temp[j]);
-				}
-			}
+	public AreaPowerSet fromAreasToBitSuperSets(List<Collection<Point>> forbiddenAreas) { 
+		return new AreaPowerSet(fromAreasToBitSets(forbiddenAreas), fg.vertexSet().size());
+	}
+	
+	/**
+	 * Coefficients of inclusion-exclusion for at least request of n events:
+	 * P(at least k events) = sum over subsets S with |S| >= k of (-1)^(|S|-k) C(|S|-1, k-1) P(all events in S)
+	 * @param n the number of paths
+	 * @param request the number of request robots
+	 * @return coefficient indexed by the size of a subset
+	 */
+	protected static double[] coefficients(int n, int request) {
+		double[] result = new double[n + 1];
+		double binomial = 1.0;               // C(size - 1, request - 1)
+		for (int size = Math.max(request, 1); size <= n; ++size) {
+			result[size] = ((size - request) % 2 == 0 ? 1 : -1) * binomial;
+			binomial = binomial * size / (size - request + 1);
 		}
-		return Arrays.asList(result);
+		return result;
 	}
 }
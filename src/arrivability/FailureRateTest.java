@@ -2,7 +2,11 @@ package arrivability;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
 
 import org.junit.Test;
 
@@ -37,4 +41,192 @@ public class FailureRateTest {
         arrivability -= Math.pow(successProbaiblity, fr.forbiddenArea(Arrays.asList(path, path2)).size());
         assertTrue(Math.abs(fr.arrivability(Arrays.asList(path, path2), 1) - arrivability) < 1e-7);
 	}
+	
+	@Test
+	public void testKArrivability() {
+		FixedRadius fr = new FixedRadius(new GridFailureGroup(5, 5, 1), new GridGraph(5, 5), 0.05);
+		List<Path<Point>> paths = new ArrayList<>();
+		for (int row = 0; row < 5; row += 2) {
+			Path<Point> path = new Path<>();
+			for (int column = 0; column < 5; ++column)
+				path.addVertex(new Point(row, column));
+			paths.add(path);
+		}
+		// At least two of three paths survive iff one of the three pairs survives
+		List<Collection<Point>> areas = fr.forbiddenAreas(paths);
+		List<Collection<Point>> pairs = new ArrayList<>();
+		for (int i = 0; i < areas.size(); ++i)
+			for (int j = i + 1; j < areas.size(); ++j) {
+				Collection<Point> pair = new HashSet<>(areas.get(i));
+				pair.addAll(areas.get(j));
+				pairs.add(pair);
+			}
+		assertEquals(fr.arrivabilityFromForbidden(pairs, 1), fr.arrivability(paths, 2), 1e-9);
+		
+		List<Collection<Point>> all = new ArrayList<>();
+		all.add(fr.forbiddenArea(paths));
+		assertEquals(fr.arrivabilityFromForbidden(all, 1), fr.arrivability(paths, 3), 1e-9);
+		assertEquals(0.0, fr.arrivability(paths, 4), 1e-9);
+	}
+	
+	@Test
+	public void testTruncation() {
+		RandomRadius rr = new RandomRadius(new GridFailureGroup(15, 15, 1), new GridGraph(15, 15), 0.05, 2);
+		List<Path<Point>> paths = new ArrayList<>();
+		for (int row = 6; row <= 9; row += 3) {
+			Path<Point> path = new Path<>();
+			for (int column = 2; column < 7; ++column)
+				path.addVertex(new Point(row, column));
+			paths.add(path);
+		}
+		Path<Point> bend = new Path<>();
+		for (int row = 5; row < 11; ++row)
+			bend.addVertex(new Point(row, 8));
+		paths.add(bend);
+		int n = paths.size();
+		double epsilon = 0.05;
+		for (int request = 1; request <= n; ++request) {
+			rr.setTruncation(0);
+			double exact = rr.arrivability(paths, request);
+			// the error is bounded by epsilon times the sum of |c_S| P_S over subsets S
+			double[] coefficient = FailureRate.coefficients(n, request);
+			double bound = 0.0;
+			for (int mask = 1; mask < 1 << n; ++mask) {
+				List<Path<Point>> subset = new ArrayList<>();
+				for (int i = 0; i < n; ++i)
+					if ((mask >> i & 1) == 1)
+						subset.add(paths.get(i));
+				bound += Math.abs(coefficient[subset.size()]) * rr.arrivability(subset, subset.size());
+			}
+			rr.setTruncation(epsilon);
+			double truncated = rr.arrivability(paths, request);
+			assertTrue(truncated != exact);
+			assertEquals(exact, truncated, epsilon * bound);
+			if (request == n)
+				assertTrue(truncated < exact && truncated >= (1 - epsilon) * exact);
+		}
+	}
+	
+	@Test
+	public void testRandomRadiusKArrivability() {
+		double failureProbability = 0.05, radius = 2;
+		FailureGroup<Point> fg = new GridFailureGroup(7, 7, 1);
+		RandomRadius rr = new RandomRadius(fg, new GridGraph(7, 7), failureProbability, radius);
+		List<Path<Point>> paths = new ArrayList<>();
+		for (int row = 1; row < 7; row += 2) {
+			Path<Point> path = new Path<>();
+			for (int column = 0; column < 7 - row / 2; ++column)
+				path.addVertex(new Point(row, column));
+			paths.add(path);
+		}
+		int n = paths.size();
+		for (int request = 1; request <= n; ++request) {
+			// At least k paths survive iff one of the subsets of k paths survives
+			List<Integer> subsets = new ArrayList<>();
+			for (int mask = 1; mask < 1 << n; ++mask)
+				if (Integer.bitCount(mask) == request)
+					subsets.add(mask);
+			double expected = 0.0;
+			for (int choice = 1; choice < 1 << subsets.size(); ++choice) {
+				int union = 0;
+				for (int i = 0; i < subsets.size(); ++i)
+					if ((choice >> i & 1) == 1)
+						union |= subsets.get(i);
+				List<Point> vertices = new ArrayList<>();
+				for (int i = 0; i < n; ++i)
+					if ((union >> i & 1) == 1)
+						for (Point vertex : paths.get(i))
+							vertices.add(vertex);
+				// the union survives iff no vertex blocks it, each at its distance to the union
+				double survival = 1.0;
+				for (int distance : fg.unweightedDistance(vertices).values())
+					survival *= 1 - failureProbability * Math.pow(1 - 1 / radius, distance);
+				expected += (Integer.bitCount(choice) % 2 == 1 ? 1 : -1) * survival;
+			}
+			assertEquals(expected, rr.arrivability(paths, request), 1e-9);
+		}
+	}
+	
+	@Test
+	public void testCompare() {
+		FixedRadius fr = new FixedRadius(new GridFailureGroup(7, 7, 1), new GridGraph(7, 7), 0.05);
+		Path<Point> straight = new Path<>(), detour = new Path<>();
+		for (int column = 0; column < 7; ++column) {
+			straight.addVertex(new Point(3, column));
+			detour.addVertex(new Point(3, column));
+		}
+		for (int row = 4; row < 7; ++row)
+			detour.addVertex(new Point(row, 6));
+		// the forbidden area of the detour contains the one of the straight path
+		List<Path<Point>> better = Arrays.asList(straight), worse = Arrays.asList(detour);
+		double difference = fr.arrivability(better, 1) - fr.arrivability(worse, 1);
+		assertTrue(difference > 0.05);
+		List<Path<Point>> paths = Arrays.asList(straight, detour);
+		assertEquals(1, fr.monteCarlo(paths).compare(1, 1, 0.95, 1 << 20, 1L));
+		assertEquals(1, fr.monteCarlo(paths).compare(1, 1, difference / 2, 0.99, 1 << 20, 1L));
+		assertEquals(0, fr.monteCarlo(paths).compare(1, 1, 2 * difference, 0.95, 1 << 16, 1L));
+		assertEquals(-1, fr.monteCarlo(Arrays.asList(detour, straight)).compare(1, 1, 0.95, 1 << 20, 1L));
+		// the same paths never disagree
+		assertEquals(0, fr.monteCarlo(Arrays.asList(straight, straight)).compare(1, 1, 0.95, 1 << 16, 1L));
+	}
+	
+	@Test
+	public void testEstimate() {
+		List<Path<Point>> paths = rows(7);
+		List<FailureRate> models = Arrays.asList(
+				new FixedRadius(new GridFailureGroup(7, 7, 1), new GridGraph(7, 7), 0.05),
+				new RandomRadius(new GridFailureGroup(7, 7, 1), new GridGraph(7, 7), 0.05, 2));
+		for (FailureRate model : models) {
+			MonteCarlo monteCarlo = model.monteCarlo(paths);
+			for (int request = 1; request <= paths.size(); ++request) {
+				Estimate estimate = monteCarlo.estimate(request, 200000, 7L);
+				assertTrue(estimate.getStandardError() > 0);
+				assertEquals(model.arrivability(paths, request), estimate.getMean(), 4 * estimate.getStandardError());
+			}
+		}
+	}
+	
+	@Test
+	public void testImportanceSampling() {
+		List<Path<Point>> paths = rows(7);
+		List<FailureRate> models = Arrays.asList(
+				new FixedRadius(new GridFailureGroup(7, 7, 1), new GridGraph(7, 7), 5e-4),
+				new RandomRadius(new GridFailureGroup(7, 7, 1), new GridGraph(7, 7), 5e-4, 1.5));
+		double relativeError = 0.05;
+		for (FailureRate model : models) {
+			MonteCarlo monteCarlo = model.monteCarlo(paths);
+			for (int request = 1; request <= paths.size(); ++request) {
+				double failureRate = 1 - model.arrivability(paths, request);
+				Estimate estimate = monteCarlo.failureRate(request, relativeError, 1 << 24, 11L);
+				assertTrue(estimate.getStandardError() <= relativeError * estimate.getMean());
+				assertEquals(failureRate, estimate.getMean(), 4 * relativeError * failureRate);
+			}
+			// every blocking cell blocks some path, so the conditional failure rate is 1
+			Estimate all = monteCarlo.failureRate(paths.size(), relativeError, 1 << 24, 11L);
+			assertEquals(0.0, all.getStandardError(), 0.0);
+			assertEquals(1 - model.arrivability(paths, paths.size()), all.getMean(), 1e-12);
+		}
+		FixedRadius fr = (FixedRadius) models.get(0);
+		double failureRate = 1 - fr.arrivability(paths, 2);
+		assertEquals(failureRate, fr.failureRateFromImportanceSampling(paths, 2, relativeError).getMean(), 5 * relativeError * failureRate);
+		RandomRadius rr = (RandomRadius) models.get(1);
+		failureRate = 1 - rr.arrivability(paths, 2);
+		assertEquals(failureRate, rr.failureRateFromImportanceSampling(paths, 2, relativeError).getMean(), 5 * relativeError * failureRate);
+	}
+	
+	/**
+	 * Create paths along every other row of a square grid
+	 * @param size the number of rows and columns
+	 * @return three paths
+	 */
+	private static List<Path<Point>> rows(int size) {
+		List<Path<Point>> paths = new ArrayList<>();
+		for (int row = 0; row < 5; row += 2) {
+			Path<Point> path = new Path<>();
+			for (int column = 0; column < size; ++column)
+				path.addVertex(new Point(row, column));
+			paths.add(path);
+		}
+		return paths;
+	}
 }
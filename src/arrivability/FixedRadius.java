@@ -5,10 +5,9 @@ import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
+import java.util.SplittableRandom;
 import java.util.logging.Logger;
 
 /**
@@ -19,7 +18,10 @@ import java.util.logging.Logger;
 public class FixedRadius extends FailureRate {
 	
 	private static final Logger logger = Logger.getLogger(FixedRadius.class.getName());
+	private static final int MAX_TRIALS = 1 << 24;
+	private static final double WORD_COST = 1.0;     // rough nanoseconds per word of a power set
 	private double successProbability;
+	private final double[] powers;                    // powers[i]: successProbability to the i, shared by all evaluations
 	
 	/**
 	 * Constructor
@@ -29,11 +31,19 @@ public class FixedRadius extends FailureRate {
 	 */
 	public FixedRadius(FailureGroup<Point> group, Graph<Point> arg_g, double failure) {
 		super(group, arg_g);
+		powers = new double[fg.vertexSet().size() + 1];
+		setFailure(failure);
+	}
+
+	@Override
+	public void setFailure(double failure) {
 		if (!Double.isFinite(failure) || failure < 0 || failure > 1) {
     		logger.severe("Not a valid probaiblity");
     		throw new IllegalArgumentException("Not a valid probaiblity");
     	}
 		successProbability = 1 - failure;
+		for (int i = 0; i < powers.length; ++i)
+			powers[i] = Math.pow(successProbability, i);
 	}
 	
 	/**
@@ -112,56 +122,34 @@ public class FixedRadius extends FailureRate {
      * @return arrivability
      */
 	public double arrivabilityFromForbidden(List<Collection<Point>> forbiddenAreas, int request) {
-		if (request == 1)
-			return arrivabilityFromForbidden(forbiddenAreas);
-    	int n = forbiddenAreas.size(), k = request;
-    	List<Collection<Point>> areas = new ArrayList<>();
-    	// Gosper's hack
-    	for (int comb = (1 << k) - 1; comb < (1 << n);) {
-    		Collection<Point> forbiddenArea = new HashSet<>();
-    		for (int i = 0; i < n; ++i) {
-    			if (((comb >> i) & 1) == 1)
-    				forbiddenArea.addAll(forbiddenAreas.get(i));
-    		}
-    		areas.add(forbiddenArea);
-    		int x = comb & -comb, y = comb + x;
-    	    comb = ((comb ^ y) / x >> 2) | y;
-    	}
-    	double result = arrivabilityFromForbidden(areas);
-    	return result;
-    }
-	
-	/**
-     * Compute arrivability from a list of forbidden areas
-     * @param forbiddenAreas forbidden areas
-     * @param request the number of request robots
-     * @return arrivability
-     */
-    private double arrivabilityFromForbidden(List<Collection<Point>> forbiddenAreas) {
-    	int[] isSelected = new int[forbiddenAreas.size()];
-		isSelected[0] = 1;
-		Collection<Point> forbiddenArea = new HashSet<>();
-		// enumerate all subset and compute its contribution to arrivability
-		for (double arrivability = 0.0; ;) {
-			// Compute the arrivability for the subset
-			
-			int count = 0, i = 0;
-			for (Collection<Point> area : forbiddenAreas) {
-				if (isSelected[i] == 1) {
-					++count;
-					forbiddenArea.addAll(area);						
-				}
-			    ++i;
-			}
-			arrivability += (count % 2 == 1 ? 1 : -1) * arrivabilityFromForbidden(forbiddenArea);
-			// Find the next subset
-			for (i = 0; i < forbiddenAreas.size() && isSelected[i] == 1; ++i)
-				isSelected[i] = 0;
-			if (i == forbiddenAreas.size())
-				return arrivability;
-			isSelected[i] = 1;
-			forbiddenArea.clear();
+		// index only the vertices in the union of areas, so entries of the power set are short
+		Map<Point, Integer> unionIndex = new HashMap<>();
+		List<BitSet> areas = new ArrayList<>();
+		for (Collection<Point> area : forbiddenAreas) {
+			BitSet bitset = new BitSet();
+			for (Point point : area)
+				bitset.set(unionIndex.computeIfAbsent(point, p -> unionIndex.size()));
+			areas.add(bitset);
 		}
+		return arrivabilityFromBitSuperSets(new AreaPowerSet(areas, unionIndex.size()), request);
+    }
+    
+    @Override
+    protected double exactCost(List<Path<Point>> paths, int request) {
+    	if (paths.size() > AreaPowerSet.getLimit())
+    		return Double.POSITIVE_INFINITY;
+    	// the union is bounded by the areas of all vertices of the paths, which is cheap to
+    	// sum, whereas building the union would cost as much as the evaluation it estimates
+    	long size = 0;
+    	for (Path<Point> path : paths)
+    		for (Point point : path) {
+    			Integer index = indexMap.get(point);
+    			if (index != null)
+    				size += forbiddenIndex[index].length;
+    		}
+    	// building the power set and summing its terms both touch every word of every entry
+    	double words = (Math.min(size, fg.vertexSet().size()) + 63) / 64;
+    	return WORD_COST * words * Math.pow(2, paths.size() + 1);
     }
     
     /**
@@ -171,23 +159,7 @@ public class FixedRadius extends FailureRate {
      * @return arrivability
      */
     public double arrivabilityFromBitSets(List<BitSet> forbiddenAreas, int request) {
-    	if (request == 1)
-			return arrivabilityFromBitSets(forbiddenAreas);
-    	int n = forbiddenAreas.size(), k = request;
-    	List<BitSet> areas = new ArrayList<>();
-    	// Gosper's hack
-    	for (int comb = (1 << k) - 1; comb < 1 << n;) {
-    		BitSet forbiddenArea = new BitSet(vertexSet().size());
-    		for (int i = 0; i < n; ++i) {
-    			if (((comb >> i) & 1) == 1)
-    				forbiddenArea.or(forbiddenAreas.get(i));
-    		}
-    		areas.add(forbiddenArea);
-    		int x = comb & -comb, y = comb + x;
-    	    comb = ((comb ^ y) / x >> 2) | y;
-    	}
-    	double result = arrivabilityFromBitSets(areas);
-    	return result;
+    	return arrivabilityFromBitSuperSets(new AreaPowerSet(forbiddenAreas, fg.vertexSet().size()), request);
     }
     
     /**
@@ -198,63 +170,46 @@ public class FixedRadius extends FailureRate {
      * @return approximated arrivability
      */
     public double arrivabilityFromMonteCarlo(int NumofTimes, int TargetSurvivals,List<Path<Point>> paths) {
-    	int totSuccess = 0;
-    	Random random = new Random();
-    	boolean isAlive[] = new boolean[paths.size()];
-    	for (int i = 0; i<NumofTimes; i++) {
-    		for (int j=0; j<paths.size();j++) isAlive[j]=true;
-    		for (Point v : fg.vertexSet()) {
-    			double mytry = random.nextDouble();
-    			if (mytry>successProbability) {
-    				for (int j=0; j<paths.size();j++) {
-    					if (paths.get(j).contains(v)) isAlive[j]=false;
-    					if (isAlive[j])
-    						for (Point neighbor: fg.getForbiddenArea(v))
-    							if (paths.get(j).contains(neighbor)) {
-    								isAlive[j]=false; break;
-    							}
-    				}
-    			}
-    		}
-    		int totSurvivals = 0;
-    		for (int j=0; j<paths.size();j++) 
-    			if (isAlive[j]) totSurvivals++;
-    		if (totSurvivals>=TargetSurvivals) totSuccess++;
-    	}
-    	return (double) totSuccess/ NumofTimes;
+    	return arrivabilityFromMonteCarlo(paths, TargetSurvivals, NumofTimes).getMean();
     }
     
     /**
-     * Compute arrivability from a list of forbidden areas
-     * @param forbiddenAreas bitset representation of areas
-     * @return arrivability
+     * Approximate arrivability by Monte Carlo
+     * @param paths selected paths
+     * @param request the number of request robots
+     * @param trials number of trials
+     * @return approximated arrivability with its standard error
      */
-    private double arrivabilityFromBitSets(List<BitSet> forbiddenAreas) {
-    	int[] isSelected = new int[forbiddenAreas.size()];
-		isSelected[0] = 1;
-		BitSet forbiddenArea = new BitSet(g.vertexSet().size());
-		// enumerate all subset and compute its contribution to arrivability
-		for (double arrivability = 0.0; ;) {
-			// Compute the arrivability for the subset
-			
-			int count = 0, i = 0;
-			for (BitSet area : forbiddenAreas) {
-				if (isSelected[i] == 1) {
-					++count;
-					forbiddenArea.or(area);						
-				}
-			    ++i;
-			}
-			arrivability += (count % 2 == 1 ? 1 : -1) * arrivabilityFromForbidden(forbiddenArea.cardinality());
-						
-			// Find the next subset
-			for (i = 0; i < forbiddenAreas.size() && isSelected[i] == 1; ++i)
-				isSelected[i] = 0;
-			if (i == forbiddenAreas.size())
-				return arrivability;
-			isSelected[i] = 1;
-			forbiddenArea.clear();
-		}
+    public Estimate arrivabilityFromMonteCarlo(List<Path<Point>> paths, int request, int trials) {
+    	return monteCarlo(paths).estimate(request, trials);
+    }
+    
+    /**
+     * Approximate arrivability by Monte Carlo, sample until the Wilson interval is narrow enough
+     * @param paths selected paths
+     * @param request the number of request robots
+     * @param halfWidth target half width of the confidence interval
+     * @param confidence confidence level
+     * @return approximated arrivability with its standard error
+     */
+    public Estimate arrivabilityFromMonteCarlo(List<Path<Point>> paths, int request, double halfWidth, double confidence) {
+    	return monteCarlo(paths).estimate(request, halfWidth, confidence, ConfidenceInterval.WILSON, MAX_TRIALS, new SplittableRandom().nextLong());
+    }
+    
+    /**
+     * Approximate failure rate by importance sampling, which suits rare failures
+     * @param paths selected paths
+     * @param request the number of request robots
+     * @param relativeError target ratio of the standard error to the failure rate
+     * @return approximated failure rate with its standard error
+     */
+    public Estimate failureRateFromImportanceSampling(List<Path<Point>> paths, int request, double relativeError) {
+    	return monteCarlo(paths).failureRate(request, relativeError, MAX_TRIALS, new SplittableRandom().nextLong());
+    }
+    
+    @Override
+    public MonteCarlo monteCarlo(List<Path<Point>> paths) {
+    	return new MonteCarlo(fromAreasToBitSets(forbiddenAreas(paths)), 1 - successProbability);
     }
     
     /**
@@ -368,18 +323,30 @@ public class FixedRadius extends FailureRate {
 	
 	/**
      * Computing arrivability based on the super set of forbidden areas
-     * @param areaPowerSet the power set of forbidden areas
-     * @param arrivability arrivability of the paths
-     * @newSet the forbidden area of the new added path
+     * @param areasPowerSet the power set of forbidden areas of the other paths
+     * @param arrivability arrivability of the other paths
+     * @param newSet the forbidden area of the new added path
+     * @param request the number of request robots
+     * @return arrivability
+     */
+    public double arrivabilityFromBitSuperSets(AreaPowerSet areasPowerSet, double arrivability, BitSet newSet, int request) {
+    	return arrivabilityFromBitSuperSets(areasPowerSet, arrivability, newSet.toLongArray(), request);
+    }
+    
+    /**
+     * Computing arrivability based on the super set of forbidden areas
+     * @param areasPowerSet the power set of forbidden areas of the other paths
+     * @param arrivability arrivability of the other paths
+     * @param area the forbidden area of the new added path in words
      * @param request the number of request robots
      * @return arrivability
      */
-    public double arrivabilityFromBitSuperSets(List<BitSet> areasPowerSet, double arrivability, BitSet newSet, int request) {
-    	for (int i = 0; i < areasPowerSet.size(); ++i) {
-    		BitSet temp = (BitSet)areasPowerSet.get(i).clone();
-    		temp.or(newSet);
-    		if (POPULATION_COUNT[i] + 1 >= request)
-    			arrivability += ((POPULATION_COUNT[i]) % 2 == 0 ? 1 : -1) * arrivabilityFromForbidden(temp.cardinality());
+    public double arrivabilityFromBitSuperSets(AreaPowerSet areasPowerSet, double arrivability, long[] area, int request) {
+    	double[] coefficient = coefficients(areasPowerSet.size() + 1, request);
+    	for (int i = 0; i < areasPowerSet.entries(); ++i) {
+    		double c = coefficient[Integer.bitCount(i) + 1];
+    		if (c != 0)
+    			arrivability += c * power(areasPowerSet.cardinality(i, area));
     	}
     	return arrivability;
     }
@@ -390,47 +357,25 @@ public class FixedRadius extends FailureRate {
      * @param request the number of request robots
      * @return arrivability
      */
-    public double arrivabilityFromBitSuperSets(List<BitSet> areasPowerSet, int request) {
+    public double arrivabilityFromBitSuperSets(AreaPowerSet areasPowerSet, int request) {
+    	double[] coefficient = coefficients(areasPowerSet.size(), request);
     	double arrivability = 0.0;
-    	for (int i = 1; i < areasPowerSet.size(); ++i) {
-    		if (POPULATION_COUNT[i] >= request)
-    			arrivability += ((POPULATION_COUNT[i]) % 2 == 1 ? 1 : -1) * arrivabilityFromForbidden(areasPowerSet.get(i).cardinality());
+    	for (int i = 1; i < areasPowerSet.entries(); ++i) {
+    		double c = coefficient[Integer.bitCount(i)];
+    		if (c != 0)
+    			arrivability += c * power(areasPowerSet.cardinality(i));
     	}
     	return arrivability;
     }
-	
-	private static final int[] POPULATION_COUNT = {0, 1, 1, 2, 1, 2, 2, 3, 
-			   1, 2, 2, 3, 2, 3, 3, 4, 
-			   1, 2, 2, 3, 2, 3, 3, 4, 
-			   2, 3, 3, 4, 3, 4, 4, 5, 
-			   1, 2, 2, 3, 2, 3, 3, 4, 
-			   2, 3, 3, 4, 3, 4, 4, 5, 
-			   2, 3, 3, 4, 3, 4, 4, 5, 
-			   3, 4, 4, 5, 4, 5, 5, 6, 
-			   1, 2, 2, 3, 2, 3, 3, 4, 
-			   2, 3, 3, 4, 3, 4, 4, 5, 
-			   2, 3, 3, 4, 3, 4, 4, 5, 
-			   3, 4, 4, 5, 4, 5, 5, 6, 
-			   2, 3, 3, 4, 3, 4, 4, 5, 
-			   3, 4, 4, 5, 4, 5, 5, 6, 
-			   3, 4, 4, 5, 4, 5, 5, 6, 
-			   4, 5, 5, 6, 5, 6, 6, 7, 
-			   1, 2, 2, 3, 2, 3, 3, 4, 
-			   2, 3, 3, 4, 3, 4, 4, 5, 
-			   2, 3, 3, 4, 3, 4, 4, 5, 
-			   3, 4, 4, 5, 4, 5, 5, 6, 
-			   2, 3, 3, 4, 3, 4, 4, 5, 
-			   3, 4, 4, 5, 4, 5, 5, 6, 
-			   3, 4, 4, 5, 4, 5, 5, 6, 
-			   4, 5, 5, 6, 5, 6, 6, 7, 
-			   2, 3, 3, 4, 3, 4, 4, 5, 
-			   3, 4, 4, 5, 4, 5, 5, 6, 
-			   3, 4, 4, 5, 4, 5, 5, 6, 
-			   4, 5, 5, 6, 5, 6, 6, 7, 
-			   3, 4, 4, 5, 4, 5, 5, 6, 
-			   4, 5, 5, 6, 5, 6, 6, 7, 
-			   4, 5, 5, 6, 5, 6, 6, 7, 
-			   5, 6, 6, 7, 6, 7, 7, 8}; 
+    
+    /**
+     * Compute the arrivability for the size of forbidden area from the table of powers
+     * @param size the size of forbidden area
+     * @return arrivability
+     */
+    private double power(int size) {
+    	return size < powers.length ? powers[size] : Math.pow(successProbability, size);
+    }
     
     public static void main(String[] args) {
     	GridGraph g = new GridGraph(5, 5);
@@ -0,0 +1,76 @@
+package arrivability;
+
+import java.util.Arrays;
+
+/**
+ * Discrete Frechet distance between paths under the shortest-path metric of a graph.
+ * The dynamic program keeps only two rows, and the threshold variants stop as soon as
+ * every cell of a row exceeds the threshold, since no later cell can be smaller.
+ */
+public final class Frechet {
+
+	private final Graph<Point> g;
+
+	/**
+	 * Constructor
+	 * @param arg_g graph
+	 */
+	public Frechet(Graph<Point> arg_g) {
+		g = arg_g;
+	}
+
+	/**
+	 * Compute the discrete Frechet distance between two paths
+	 * @param path1 first path
+	 * @param path2 second path
+	 * @return the distance
+	 */
+	public double distance(Path<Point> path1, Path<Point> path2) {
+		return distance(path1, path2, Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * Compute the discrete Frechet distance between two paths if it is within a threshold
+	 * @param path1 first path
+	 * @param path2 second path
+	 * @param threshold the threshold
+	 * @return the distance if it is at most threshold, infinity otherwise
+	 */
+	public double distance(Path<Point> path1, Path<Point> path2, double threshold) {
+		Point[] points2 = path2.toCollection().toArray(new Point[path2.size()]);
+		int m2 = points2.length;
+		double[] previous = new double[m2 + 1], current = new double[m2 + 1];
+		Arrays.fill(previous, Double.POSITIVE_INFINITY);
+		previous[0] = 0.0;
+		current[0] = Double.POSITIVE_INFINITY;
+		for (Point p1 : path1) {
+			double rowMin = Double.POSITIVE_INFINITY;
+			for (int j = 1; j <= m2; ++j) {
+				double reach = Math.min(Math.min(current[j - 1], previous[j]), previous[j - 1]);
+				// the cell cannot be within the threshold, skip the distance query
+				double value = reach > threshold ? reach : Math.max(g.distanceQuery(p1, points2[j - 1]), reach);
+				current[j] = value;
+				if (value < rowMin)
+					rowMin = value;
+			}
+			if (rowMin > threshold)
+				return Double.POSITIVE_INFINITY;
+			double[] temp = previous;
+			previous = current;
+			current = temp;
+			current[0] = Double.POSITIVE_INFINITY;
+		}
+		return previous[m2] > threshold ? Double.POSITIVE_INFINITY : previous[m2];
+	}
+
+	/**
+	 * Decide whether the discrete Frechet distance between two paths is at most a threshold
+	 * @param path1 first path
+	 * @param path2 second path
+	 * @param delta the threshold
+	 * @return true if the distance is at most delta, false otherwise
+	 */
+	public boolean atMost(Path<Point> path1, Path<Point> path2, double delta) {
+		return distance(path1, path2, delta) <= delta;
+	}
+}
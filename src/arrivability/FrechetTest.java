@@ -0,0 +1,75 @@
+package arrivability;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+
+public class FrechetTest {
+
+	@Test
+	public void testThreshold() {
+		GridGraph g = new GridGraph(6, 6);
+		Frechet frechet = new Frechet(g);
+		List<Point> vertices = new ArrayList<>(g.vertexSet());
+		SplittableRandom random = new SplittableRandom(3L);
+		for (int trial = 0; trial < 200; ++trial) {
+			Path<Point> path1 = randomWalk(g, vertices, random), path2 = randomWalk(g, vertices, random);
+			double expected = fullDistance(g, path1, path2);
+			assertEquals(expected, frechet.distance(path1, path2), 0.0);
+			// thresholds below, at and above the distance
+			for (double threshold : new double[]{expected - 1, expected - 0.5, expected, expected + 0.5, expected + 1}) {
+				double bounded = frechet.distance(path1, path2, threshold);
+				assertEquals(expected <= threshold ? expected : Double.POSITIVE_INFINITY, bounded, 0.0);
+				assertEquals(expected <= threshold, frechet.atMost(path1, path2, threshold));
+			}
+		}
+	}
+	
+	/**
+	 * Compute the discrete Frechet distance by the full dynamic program
+	 * @param g graph
+	 * @param path1 first path
+	 * @param path2 second path
+	 * @return the distance
+	 */
+	private static double fullDistance(Graph<Point> g, Path<Point> path1, Path<Point> path2) {
+		int m1 = path1.size(), m2 = path2.size();
+		double[][] table = new double[m1][m2];
+		for (int i = 0; i < m1; ++i)
+			for (int j = 0; j < m2; ++j) {
+				double d = g.distanceQuery(path1.get(i), path2.get(j));
+				if (i == 0 && j == 0)
+					table[i][j] = d;
+				else if (i == 0)
+					table[i][j] = Math.max(table[i][j - 1], d);
+				else if (j == 0)
+					table[i][j] = Math.max(table[i - 1][j], d);
+				else
+					table[i][j] = Math.max(Math.min(Math.min(table[i - 1][j], table[i][j - 1]), table[i - 1][j - 1]), d);
+			}
+		return table[m1 - 1][m2 - 1];
+	}
+	
+	/**
+	 * Create a random walk of one to eight vertices
+	 * @param g graph
+	 * @param vertices vertices of the graph
+	 * @param random random stream
+	 * @return the walk
+	 */
+	private static Path<Point> randomWalk(Graph<Point> g, List<Point> vertices, SplittableRandom random) {
+		Path<Point> path = new Path<>();
+		Point point = vertices.get(random.nextInt(vertices.size()));
+		path.addVertex(point);
+		for (int length = random.nextInt(8); length > 0; --length) {
+			List<Point> neighbors = new ArrayList<>(g.getNeighbors(point));
+			point = neighbors.get(random.nextInt(neighbors.size()));
+			path.addVertex(point);
+		}
+		return path;
+	}
+}
@@ -0,0 +1,308 @@
+package arrivability;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * A minimal JSON reader and writer for the planning service. Objects are read as maps,
+ * arrays as lists, numbers as doubles, and written back from the same types.
+ */
+final class Json {
+
+	private static final Logger logger = Logger.getLogger(Json.class.getName());
+	private static final int MAX_DEPTH = 256;        // deepest nesting of objects and arrays
+	private final String text;
+	private int position = 0;
+	private int depth = 0;
+
+	/**
+	 * Constructor
+	 * @param text JSON text
+	 */
+	private Json(String text) {
+		this.text = text;
+	}
+
+	/**
+	 * Parse a JSON text
+	 * @param text JSON text
+	 * @return a map, list, string, double, boolean or null
+	 */
+	static Object parse(String text) {
+		Json json = new Json(text);
+		Object value = json.value();
+		json.skipSpaces();
+		if (json.position != text.length())
+			throw json.error("Unexpected trailing characters");
+		return value;
+	}
+
+	/**
+	 * Write a value as JSON text
+	 * @param value a map, iterable, array of doubles, string, number, boolean or null
+	 * @return JSON text
+	 */
+	static String write(Object value) {
+		StringBuilder builder = new StringBuilder();
+		write(builder, value);
+		return builder.toString();
+	}
+
+	/**
+	 * Write a value as JSON text
+	 * @param builder the output
+	 * @param value the value
+	 */
+	private static void write(StringBuilder builder, Object value) {
+		if (value == null || value instanceof Boolean) {
+			builder.append(value);
+		} else if (value instanceof Number) {
+			double number = ((Number) value).doubleValue();
+			if (!Double.isFinite(number))
+				builder.append("null");
+			else if (number == Math.rint(number) && Math.abs(number) < 1e15)
+				builder.append((long) number);
+			else
+				builder.append(number);
+		} else if (value instanceof Map) {
+			builder.append('{');
+			String separator = "";
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				builder.append(separator);
+				write(builder, entry.getKey().toString());
+				builder.append(':');
+				write(builder, entry.getValue());
+				separator = ",";
+			}
+			builder.append('}');
+		} else if (value instanceof Iterable) {
+			builder.append('[');
+			String separator = "";
+			for (Object element : (Iterable<?>) value) {
+				builder.append(separator);
+				write(builder, element);
+				separator = ",";
+			}
+			builder.append(']');
+		} else if (value instanceof double[]) {
+			builder.append('[');
+			double[] array = (double[]) value;
+			for (int i = 0; i < array.length; ++i) {
+				if (i > 0)
+					builder.append(',');
+				write(builder, array[i]);
+			}
+			builder.append(']');
+		} else {
+			builder.append('"');
+			for (char c : value.toString().toCharArray()) {
+				if (c == '"' || c == '\\')
+					builder.append('\\').append(c);
+				else if (c < 0x20)
+					builder.append(String.format("\\u%04x", (int) c));
+				else
+					builder.append(c);
+			}
+			builder.append('"');
+		}
+	}
+
+	/**
+	 * Read a value
+	 * @return the value
+	 */
+	private Object value() {
+		skipSpaces();
+		if (position >= text.length())
+			throw error("Unexpected end");
+		char c = text.charAt(position);
+		switch (c) {
+			case '{':
+				return object();
+			case '[':
+				return array();
+			case '"':
+				return string();
+			case 't':
+				return literal("true", Boolean.TRUE);
+			case 'f':
+				return literal("false", Boolean.FALSE);
+			case 'n':
+				return literal("null", null);
+		}
+		return number();
+	}
+
+	/**
+	 * Read an object
+	 * @return the object as a map
+	 */
+	private Map<String, Object> object() {
+		Map<String, Object> result = new LinkedHashMap<>();
+		enter();
+		skipSpaces();
+		if (peek() == '}') {
+			++position;
+			--depth;
+			return result;
+		}
+		while (true) {
+			skipSpaces();
+			if (peek() != '"')
+				throw error("Expected a key");
+			String key = string();
+			skipSpaces();
+			expect(':');
+			result.put(key, value());
+			skipSpaces();
+			if (peek() == '}') {
+				++position;
+				--depth;
+				return result;
+			}
+			expect(',');
+		}
+	}
+
+	/**
+	 * Read an array
+	 * @return the array as a list
+	 */
+	private List<Object> array() {
+		List<Object> result = new ArrayList<>();
+		enter();
+		skipSpaces();
+		if (peek() == ']') {
+			++position;
+			--depth;
+			return result;
+		}
+		while (true) {
+			result.add(value());
+			skipSpaces();
+			if (peek() == ']') {
+				++position;
+				--depth;
+				return result;
+			}
+			expect(',');
+		}
+	}
+
+	/**
+	 * Read a string
+	 * @return the string
+	 */
+	private String string() {
+		StringBuilder builder = new StringBuilder();
+		++position;
+		while (position < text.length()) {
+			char c = text.charAt(position++);
+			if (c == '"')
+				return builder.toString();
+			if (c != '\\') {
+				builder.append(c);
+				continue;
+			}
+			if (position >= text.length())
+				break;
+			char escaped = text.charAt(position++);
+			switch (escaped) {
+				case 'b': builder.append('\b'); break;
+				case 'f': builder.append('\f'); break;
+				case 'n': builder.append('\n'); break;
+				case 'r': builder.append('\r'); break;
+				case 't': builder.append('\t'); break;
+				case 'u':
+					if (position + 4 > text.length())
+						throw error("Bad escape");
+					try {
+						builder.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+					} catch (NumberFormatException e) {
+						throw error("Bad escape");
+					}
+					position += 4;
+					break;
+				default: builder.append(escaped);
+			}
+		}
+		throw error("Unterminated string");
+	}
+
+	/**
+	 * Read a number
+	 * @return the number
+	 */
+	private Double number() {
+		int start = position;
+		while (position < text.length() && "+-0123456789.eE".indexOf(text.charAt(position)) >= 0)
+			++position;
+		try {
+			return Double.valueOf(text.substring(start, position));
+		} catch (NumberFormatException e) {
+			throw error("Expected a value");
+		}
+	}
+
+	/**
+	 * Read a literal
+	 * @param word the literal
+	 * @param value its value
+	 * @return the value
+	 */
+	private Object literal(String word, Object value) {
+		if (!text.startsWith(word, position))
+			throw error("Expected a value");
+		position += word.length();
+		return value;
+	}
+
+	/**
+	 * Consume the opening bracket of an object or an array
+	 */
+	private void enter() {
+		if (++depth > MAX_DEPTH)
+			throw error("Too deeply nested");
+		++position;
+	}
+
+	/**
+	 * Consume an expected character
+	 * @param c the character
+	 */
+	private void expect(char c) {
+		if (peek() != c)
+			throw error("Expected " + c);
+		++position;
+	}
+
+	/**
+	 * Return the next character
+	 * @return the next character, or 0 at the end
+	 */
+	private char peek() {
+		return position < text.length() ? text.charAt(position) : 0;
+	}
+
+	/**
+	 * Skip white spaces
+	 */
+	private void skipSpaces() {
+		while (position < text.length() && Character.isWhitespace(text.charAt(position)))
+			++position;
+	}
+
+	/**
+	 * Create an error at the current position
+	 * @param message the message
+	 * @return the error
+	 */
+	private IllegalArgumentException error(String message) {
+		// malformed text comes from clients, so it is not an error of the application
+		logger.fine(message + " at " + position);
+		return new IllegalArgumentException(message + " at " + position);
+	}
+}
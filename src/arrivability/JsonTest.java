@@ -0,0 +1,67 @@
+package arrivability;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class JsonTest {
+
+	@Test
+	public void testRoundTrip() {
+		Map<String, Object> value = new LinkedHashMap<>();
+		value.put("map", "default");
+		value.put("source", Arrays.asList(1.0, 2.0));
+		value.put("budget", 1500.0);
+		value.put("failure", 0.25);
+		value.put("streaming", Boolean.TRUE);
+		value.put("model", null);
+		value.put("note", "quote \" back \\ tab \t");
+		value.put("empty", new LinkedHashMap<>());
+		String text = Json.write(value);
+		assertEquals(value, Json.parse(text));
+		assertEquals(text, Json.write(Json.parse(text)));
+		
+		Object parsed = Json.parse(" { \"a\" : [ 1 , -2.5e1 , \"\\u0041\" , [ ] ] } ");
+		List<Object> a = Arrays.asList(1.0, -25.0, "A", Arrays.asList());
+		Map<String, Object> expected = new LinkedHashMap<>();
+		expected.put("a", a);
+		assertEquals(expected, parsed);
+	}
+	
+	@Test
+	public void testMalformed() {
+		String[] texts = {"", "{", "[1,", "{\"a\" 1}", "{1:2}", "[1 2]", "\"abc", "tru", "1 2", "[-]", "{\"a\":1,}"};
+		for (String text : texts) {
+			try {
+				Json.parse(text);
+				fail("Parsed " + text);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+	
+	@Test
+	public void testNesting() {
+		StringBuilder deep = new StringBuilder();
+		for (int i = 0; i < 100000; ++i)
+			deep.append('[');
+		try {
+			Json.parse(deep.toString());
+			fail("Parsed a deeply nested text");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().startsWith("Too deeply nested"));
+		}
+		StringBuilder nested = new StringBuilder();
+		for (int i = 0; i < 100; ++i)
+			nested.append("{\"a\":[");
+		for (int i = 0; i < 100; ++i)
+			nested.append("]}");
+		assertNotNull(Json.parse(nested.toString()));
+	}
+}
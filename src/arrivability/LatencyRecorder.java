@@ -0,0 +1,68 @@
+package arrivability;
+
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+/**
+ * Latencies of the most recent requests, kept in a ring buffer, and their percentiles
+ */
+public final class LatencyRecorder {
+
+	private static final Logger logger = Logger.getLogger(LatencyRecorder.class.getName());
+	private final long[] window;            // nanoseconds
+	private long count = 0;
+
+	/**
+	 * Constructor
+	 * @param capacity the number of recent latencies kept
+	 */
+	public LatencyRecorder(int capacity) {
+		if (capacity <= 0) {
+			logger.severe("Not a valid capacity");
+			throw new IllegalArgumentException("Not a valid capacity");
+		}
+		window = new long[capacity];
+	}
+
+	/**
+	 * Record a latency
+	 * @param nanoseconds the latency
+	 */
+	public synchronized void record(long nanoseconds) {
+		window[(int) (count % window.length)] = nanoseconds;
+		++count;
+	}
+
+	/**
+	 * Return the number of recorded latencies
+	 * @return the number of latencies since creation
+	 */
+	public synchronized long getCount() {
+		return count;
+	}
+
+	/**
+	 * Compute percentiles of the recent latencies by the nearest rank
+	 * @param percentiles percentiles in [0, 100]
+	 * @return latencies in nanoseconds, 0 if nothing has been recorded
+	 */
+	public double[] percentiles(double... percentiles) {
+		long[] sorted;
+		synchronized (this) {
+			sorted = Arrays.copyOf(window, (int) Math.min(count, window.length));
+		}
+		Arrays.sort(sorted);
+		double[] result = new double[percentiles.length];
+		for (int i = 0; i < percentiles.length; ++i) {
+			if (!(percentiles[i] >= 0 && percentiles[i] <= 100)) {
+				logger.severe("Not a valid percentile");
+				throw new IllegalArgumentException("Not a valid percentile");
+			}
+			if (sorted.length > 0) {
+				int rank = (int) Math.ceil(percentiles[i] / 100 * sorted.length);
+				result[i] = sorted[Math.max(0, rank - 1)];
+			}
+		}
+		return result;
+	}
+}
@@ -1,6 +1,19 @@
 package arrivability;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
 import java.util.logging.Logger;
 
 /**
@@ -12,10 +25,20 @@ public class MaximizeArrivability {
 
 	private static final Logger logger = Logger.getLogger(MaximizeArrivability.class.getName());
 	public static final double EPSILON = 1e-7;
+	// shares of a time budget, time left by a stage goes to the later stages
+	private static final double GENERATION_SHARE = 0.2;
+	private static final double SELECTION_SHARE = 0.3;
+	private static final double IMPROVEMENT_SHARE = 0.5;
+	private static final int STREAM_CAPACITY = 64;     // generated paths waiting for selection in the streaming mode
 	private int numberOfRobots;
 	private int numberOfRequest;
 	private int numberOfGeneratedPaths;
 	private int numberOfIteration;
+	private int numberOfChains = 1;
+	private boolean streaming = false;
+	private Graph<Point> g;
+	private int selectionMode;
+	private FailureRate model;
 	private PathGeneration pg;
 	private PathSelection ps;
 	private PathImprovement pi;
@@ -31,11 +54,65 @@ public class MaximizeArrivability {
 		numberOfRequest = required;
 		numberOfGeneratedPaths = generate;
 		numberOfIteration = iteration;
+		this.g = g;
+		selectionMode = selMode;
+		model = fr;
 		pg = new PathGeneration(g, genMode);
 		ps = new PathSelection(g, fr, selMode);
 		pi = new PathImprovement(g, fr);
 	}
 	
+	/**
+	 * Generate paths on another thread while selecting from the paths generated so far.
+	 * Generation stops when selection stops consuming paths.
+	 * @param source source point
+	 * @param target target point
+	 * @return the selected paths
+	 */
+	private List<Path<Point>> streamAndSelect(Point source, Point target) {
+		BlockingQueue<Path<Point>> stream = new ArrayBlockingQueue<>(STREAM_CAPACITY);
+		ExecutorService generator = Executors.newSingleThreadExecutor();
+		Future<Integer> producer = generator.submit(() -> 
+			pg.streamPaths(numberOfGeneratedPaths, source, target, stream, () -> Thread.currentThread().isInterrupted()));
+		try {
+			List<Path<Point>> solution = ps.select(stream, producer, numberOfRobots, numberOfRequest);
+			if (producer.isDone())
+				logger.info("Path generation completed with " + producer.get() + " paths");
+			return solution;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			logger.severe("Path generation interrupted");
+			throw new IllegalStateException("Path generation interrupted", e);
+		} catch (ExecutionException e) {
+			logger.severe("Path generation failed: " + e.getCause());
+			throw new IllegalStateException("Path generation failed", e.getCause());
+		} finally {
+			// the incumbent has stopped improving, so the remaining paths are not needed
+			producer.cancel(true);
+			generator.shutdown();
+		}
+	}
+	
+	/**
+	 * Overlap path generation and path selection in getSolution
+	 * @param enabled whether selection consumes paths while they are generated
+	 */
+	public void setStreaming(boolean enabled) {
+		streaming = enabled;
+	}
+	
+	/**
+	 * Set the number of independent improvement chains
+	 * @param chains number of chains, 1 for a single chain
+	 */
+	public void setNumberOfChains(int chains) {
+		if (chains < 1) {
+			logger.severe("Not a valid number of chains");
+			throw new IllegalArgumentException("Not a valid number of chains");
+		}
+		numberOfChains = chains;
+	}
+	
 	/**
 	 * Get solution
 	 * @param source source point
@@ -45,20 +122,235 @@ public class MaximizeArrivability {
 	public List<Path<Point>> getSolution(Point source, Point target) {
 		logger.info("Start to find an optimal solution");
 		long startTime = System.nanoTime();
-		List<Path<Point>> paths = pg.getPaths(numberOfGeneratedPaths, source, target);
-		long generationTime = System.nanoTime();
-		logger.info("Path generation takes " + (generationTime - startTime) / 1000000 + " milliseconds");
-		List<Path<Point>> solution = ps.select(paths, numberOfRobots, numberOfRequest);
+		List<Path<Point>> solution;
+		if (streaming) {
+			solution = streamAndSelect(source, target);
+			logger.info("Streaming path generation and selection take " + (System.nanoTime() - startTime) / 1000000 + " milliseconds");
+		} else {
+			List<Path<Point>> paths = pg.getPaths(numberOfGeneratedPaths, source, target);
+			long generationTime = System.nanoTime();
+			logger.info("Path generation takes " + (generationTime - startTime) / 1000000 + " milliseconds");
+			solution = ps.select(paths, numberOfRobots, numberOfRequest);
+			logger.info("Path selection takes " + (System.nanoTime() - generationTime) / 1000000 + " milliseconds");
+		}
 		long selectionTime = System.nanoTime();
-		logger.info("Path selection takes " + (selectionTime - generationTime) / 1000000 + " milliseconds");
-		List<Path<Point>> improved = pi.improve(solution, pg, numberOfRequest, numberOfIteration);
+		List<Path<Point>> improved = pi.improve(solution, pg, numberOfRequest, numberOfIteration, numberOfChains);
 		long endTime = System.nanoTime();
 		logger.info("Path improvement takes " + (endTime - selectionTime) / 1000000 + " milliseconds");
     	long duration = (endTime - startTime) / 1000000;
     	logger.info("Search completed in " + duration + " milliseconds");    	
+    	logger.info("Evaluations so far: " + model.getExactEvaluations() + " exact, " + model.getApproximateEvaluations() + " approximate");
     	return improved;
 	}
 	
+	/**
+	 * Get solution within a time budget. The budget is divided across generation, selection
+	 * and improvement; each stage stops at its deadline and passes on the best it has found.
+	 * Each call has its own path selection, so calls may run concurrently.
+	 * @param source source point
+	 * @param target target point
+	 * @param budget the time budget
+	 * @return the solution with the stages stopped by their deadlines
+	 */
+	public Plan getSolution(Point source, Point target, Duration budget) {
+		logger.info("Start to find a solution in " + budget.toMillis() + " milliseconds");
+		return plan(source, target, new PathSelection(g, model, selectionMode), new Deadline(budget.toNanos()));
+	}
+	
+	/**
+	 * Get solutions of many missions on the same graph and model. Missions run concurrently on
+	 * a work-stealing pool and share the path generation, the shortcut cache of path improvement,
+	 * the distance cache of the graph, which is not reset between missions, and the failure group
+	 * bitsets and power tables of the model. Each mission has its own path selection.
+	 * @param missions the missions
+	 * @return the plans in the order of missions, each completed as soon as its mission is solved
+	 */
+	public List<CompletableFuture<Plan>> getSolutions(List<Mission> missions) {
+		return getSolutions(missions, new ForkJoinPool());
+	}
+	
+	/**
+	 * Get solutions of many missions on a given pool, which is shut down once every mission
+	 * is solved or has failed
+	 * @param missions the missions
+	 * @param pool the pool running the missions
+	 * @return the plans in the order of missions
+	 */
+	List<CompletableFuture<Plan>> getSolutions(List<Mission> missions, ExecutorService pool) {
+		logger.info("Start to plan " + missions.size() + " missions");
+		prepare();
+		List<CompletableFuture<Plan>> plans = new ArrayList<>(missions.size());
+		for (Mission mission : missions)
+			plans.add(CompletableFuture.supplyAsync(() -> 
+				plan(mission.getSource(), mission.getTarget(), new PathSelection(g, model, selectionMode), Deadline.none()), pool));
+		CompletableFuture.allOf(plans.toArray(new CompletableFuture<?>[0])).whenComplete((result, e) -> pool.shutdown());
+		return plans;
+	}
+	
+	/**
+	 * Generate candidate paths within the generation share of a time budget, so that they can
+	 * be shared by missions with the same source and target
+	 * @param source source point
+	 * @param target target point
+	 * @param budget the time budget of the missions
+	 * @return candidate paths
+	 */
+	public List<Path<Point>> generate(Point source, Point target, Duration budget) {
+		return pg.getPaths(numberOfGeneratedPaths, source, target, new Deadline(budget.toNanos()).fraction(GENERATION_SHARE));
+	}
+	
+	/**
+	 * Get solution from given candidates within a time budget, which is divided between
+	 * selection and improvement. The generation time of the plan is 0.
+	 * @param source source point
+	 * @param target target point
+	 * @param candidates candidate paths, which are not modified
+	 * @param budget the time budget
+	 * @return the solution with the stages stopped by their deadlines
+	 */
+	public Plan getSolutionFromCandidates(Point source, Point target, List<Path<Point>> candidates, Duration budget) {
+		Plan plan = plan(source, target, candidates, new PathSelection(g, model, selectionMode), new Deadline(budget.toNanos()));
+		logger.info(plan.toString());
+		return plan;
+	}
+	
+	/**
+	 * Prepare the caches of the graph to be shared by concurrent missions
+	 */
+	public void prepare() {
+		pi.shareDistances();
+	}
+	
+	/**
+	 * Generate, select and improve paths before a deadline without resetting the graph
+	 * @param source source point
+	 * @param target target point
+	 * @param selection path selection owned by the caller
+	 * @param deadline wall-clock deadline
+	 * @return the solution with the stages stopped by their deadlines
+	 */
+	private Plan plan(Point source, Point target, PathSelection selection, Deadline deadline) {
+		long startTime = System.nanoTime();
+		List<Path<Point>> paths = pg.getPaths(numberOfGeneratedPaths, source, target, deadline.fraction(GENERATION_SHARE));
+		long generationTime = System.nanoTime();
+		Plan plan = plan(source, target, paths, selection, deadline);
+		plan.record(Plan.GENERATION, generationTime - startTime, paths.size() < numberOfGeneratedPaths);
+		logger.info(plan.toString());
+		return plan;
+	}
+	
+	/**
+	 * Select and improve paths from candidates before a deadline without resetting the graph
+	 * @param source source point
+	 * @param target target point
+	 * @param candidates candidate paths, which are not modified
+	 * @param selection path selection owned by the caller
+	 * @param deadline wall-clock deadline
+	 * @return the solution with the stages stopped by their deadlines
+	 */
+	private Plan plan(Point source, Point target, List<Path<Point>> candidates, PathSelection selection, Deadline deadline) {
+		long startTime = System.nanoTime();
+		CandidateTable table = new CandidateTable(model, candidates);
+		// a selection needs at least one path per robot
+		while (table.size() < numberOfRobots)
+			table.add(pg.randomPath(source, target));
+		return resume(table, null, selection, deadline, startTime);
+	}
+	
+	/**
+	 * Select paths from a candidate table, or improve a given selection by swaps with the
+	 * candidates of the table, and improve them before a deadline. Improved paths are appended
+	 * to the table, so that a replanning can select them again.
+	 * @param table the candidate pool
+	 * @param start indices of candidates to start the swaps from, null to select from the table
+	 * @param selection path selection owned by the caller
+	 * @param deadline wall-clock deadline
+	 * @param startTime start of the selection stage
+	 * @return the solution with the stages stopped by their deadlines
+	 */
+	private Plan resume(CandidateTable table, int[] start, PathSelection selection, Deadline deadline, long startTime) {
+		Deadline selectionDeadline = deadline.fraction(SELECTION_SHARE / (SELECTION_SHARE + IMPROVEMENT_SHARE));
+		List<Path<Point>> solution = start != null ? selection.resume(table, start, numberOfRequest, selectionDeadline)
+				: selection.select(table, numberOfRobots, numberOfRequest, selectionDeadline);
+		boolean selectionStopped = selectionDeadline.expired();
+		Set<Path<Point>> selected = new HashSet<>(solution);
+		long selectionTime = System.nanoTime();
+		List<Path<Point>> improved = pi.improve(solution, pg, numberOfRequest, numberOfIteration, numberOfChains, deadline);
+		boolean improvementStopped = deadline.expired();
+		long endTime = System.nanoTime();
+		for (Path<Point> path : improved)
+			if (selected.add(path))
+				table.add(path);
+		Plan plan = new Plan(improved, model.evaluate(improved, numberOfRequest), table);
+		plan.record(Plan.SELECTION, selectionTime - startTime, selectionStopped);
+		plan.record(Plan.IMPROVEMENT, endTime - selectionTime, improvementStopped);
+		return plan;
+	}
+	
+	/**
+	 * Replan within a time budget after the map or the model has changed since a previous plan.
+	 * The change is applied to the graph and the model of this solver. Candidates of the previous
+	 * pool passing through blocked vertices are invalidated and replaced by new paths, whose
+	 * forbidden areas are the only ones computed; the other candidates keep their areas, which
+	 * depend on the failure group but not on the map or the probability, and a new probability
+	 * rebuilds only the tables of the model. If the previous solution is still valid and has a
+	 * path per robot, swaps with the candidates of the pool, including the replacements, improve
+	 * it before shortcuts and escapes; otherwise paths are selected again from the pool. Cached
+	 * shortcuts follow the old map and are discarded when the map changes.
+	 * Other plans on the same graph or model must not run during replanning.
+	 * @param previous a previous plan on the same failure group
+	 * @param delta the change since the previous plan
+	 * @param budget the time budget
+	 * @return the new plan, whose generation time covers applying the change and replacing candidates
+	 */
+	public Plan replan(Plan previous, Delta delta, Duration budget) {
+		if (previous.getSolution().isEmpty()) {
+			logger.severe("Not a valid plan");
+			throw new IllegalArgumentException("Not a valid plan");
+		}
+		logger.info("Start to replan in " + budget.toMillis() + " milliseconds");
+		Deadline deadline = new Deadline(budget.toNanos());
+		long startTime = System.nanoTime();
+		Path<Point> first = previous.getSolution().get(0);
+		Point source = first.get(0);
+		Point target = first.get(first.size() - 1);
+		Set<Point> blocked = delta.getObstacles();
+		if (blocked.contains(source) || blocked.contains(target)) {
+			logger.severe("Source or target is blocked");
+			throw new IllegalArgumentException("Source or target is blocked");
+		}
+		delta.apply(g, model);
+		if (delta.changesMap())
+			pi.clearCache();
+		Predicate<Path<Point>> valid = path -> blocked.stream().noneMatch(path::contains);
+		CandidateTable pool = previous.candidates() != null ? previous.candidates() : new CandidateTable(model, previous.getSolution());
+		CandidateTable table = pool.retain(model, valid);
+		int invalidated = pool.size() - table.size();
+		logger.info("Replanning invalidates " + invalidated + " of " + pool.size() + " candidates");
+		List<Path<Point>> replacements = invalidated > 0 ? 
+				pg.getPaths(invalidated, source, target, deadline.fraction(GENERATION_SHARE)) : new ArrayList<>();
+		for (Path<Point> path : replacements)
+			table.add(path);
+		// a selection needs at least one path per robot
+		while (table.size() < numberOfRobots)
+			table.add(pg.randomPath(source, target));
+		List<Path<Point>> previousSolution = previous.getSolution();
+		int[] start = null;
+		if (previousSolution.size() == numberOfRobots && previousSolution.stream().allMatch(valid)) {
+			start = new int[numberOfRobots];
+			for (int i = 0; i < numberOfRobots; ++i) {
+				int id = table.indexOf(previousSolution.get(i));
+				start[i] = id >= 0 ? id : table.add(previousSolution.get(i)).getId();
+			}
+		}
+		long generationTime = System.nanoTime();
+		Plan plan = resume(table, start, new PathSelection(g, model, selectionMode), deadline, generationTime);
+		plan.record(Plan.GENERATION, generationTime - startTime, replacements.size() < invalidated);
+		plan.recordInvalidated(invalidated);
+		logger.info(plan.toString());
+		return plan;
+	}
+	
 	/**
      * Get solution
      * @param source source point
@@ -68,7 +360,7 @@ public class MaximizeArrivability {
     public List<Path<Point>> getSolution(Point source, Point target, List<Path<Point>> solution) {
         logger.info("Start to find an optimal solution");
         long startTime = System.nanoTime();
-        List<Path<Point>> improved = pi.improve(solution, pg, numberOfRequest, numberOfIteration);
+        List<Path<Point>> improved = pi.improve(solution, pg, numberOfRequest, numberOfIteration, numberOfChains);
         long endTime = System.nanoTime();
         logger.info("Path improvement takes " + (endTime - startTime) / 1000000 + " milliseconds");
         long duration = (endTime - startTime) / 1000000;
@@ -0,0 +1,76 @@
+package arrivability;
+
+import static org.junit.Assert.*;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class MaximizeArrivabilityTest {
+
+	@Test
+	public void testReplan() {
+		GridGraph g = new GridGraph(8, 8);
+		FixedRadius fr = new FixedRadius(new GridFailureGroup(8, 8, 1), g, 0.05);
+		fr.setEvaluator(FailureRate.EXACT);
+		MaximizeArrivability ma = new MaximizeArrivability(g, fr, 2, 1, 10, PathGeneration.RANDOM, PathSelection.GREEDY, 2);
+		Plan before = ma.getSolution(new Point(0, 0), new Point(7, 7), Duration.ofSeconds(30));
+		Path<Point> selected = before.getSolution().get(0);
+		Point obstacle = selected.get(selected.size() / 2);
+		int expected = 0;
+		for (int i = 0; i < before.candidates().size(); ++i)
+			if (before.candidates().get(i).getPath().contains(obstacle))
+				++expected;
+		
+		Delta delta = new Delta();
+		delta.addObstacle(obstacle);
+		Plan after = ma.replan(before, delta, Duration.ofSeconds(30));
+		assertTrue(expected >= 1);
+		assertEquals(expected, after.getInvalidated());
+		assertEquals(2, after.getSolution().size());
+		for (Path<Point> path : after.getSolution())
+			assertFalse(path.contains(obstacle));
+		assertEquals(fr.arrivability(after.getSolution(), 1), after.getArrivability(), 1e-9);
+		
+		// a new probability keeps every candidate and resumes from the previous solution
+		delta = new Delta();
+		delta.setFailure(0.1);
+		Plan resumed = ma.replan(after, delta, Duration.ofSeconds(30));
+		assertEquals(0, resumed.getInvalidated());
+		for (Path<Point> path : resumed.getSolution())
+			assertFalse(path.contains(obstacle));
+		assertEquals(fr.arrivability(resumed.getSolution(), 1), resumed.getArrivability(), 1e-9);
+		// swaps and shortcuts only improve the previous solution under the new probability
+		assertTrue(resumed.getArrivability() >= fr.arrivability(after.getSolution(), 1) - 1e-9);
+	}
+	
+	@Test
+	public void testSolutions() throws Exception {
+		GridGraph g = new GridGraph(8, 8);
+		FixedRadius fr = new FixedRadius(new GridFailureGroup(8, 8, 1), g, 0.05);
+		fr.setEvaluator(FailureRate.EXACT);
+		// iterative penalty generates the same candidates whatever order missions run in
+		MaximizeArrivability ma = new MaximizeArrivability(g, fr, 2, 1, 10, PathGeneration.REWEIGHT, PathSelection.GREEDY, 2);
+		List<Mission> missions = Arrays.asList(new Mission(new Point(0, 0), new Point(7, 7)), new Mission(new Point(7, 0), new Point(0, 7)), 
+				new Mission(new Point(0, 3), new Point(7, 4)), new Mission(new Point(0, 0), new Point(7, 7)));
+		ForkJoinPool pool = new ForkJoinPool(2);
+		List<CompletableFuture<Plan>> plans = ma.getSolutions(missions, pool);
+		assertEquals(missions.size(), plans.size());
+		for (int i = 0; i < missions.size(); ++i) {
+			Plan plan = plans.get(i).get(60, TimeUnit.SECONDS);
+			assertEquals(2, plan.getSolution().size());
+			for (Path<Point> path : plan.getSolution()) {
+				assertEquals(missions.get(i).getSource(), path.get(0));
+				assertEquals(missions.get(i).getTarget(), path.get(path.size() - 1));
+			}
+			assertEquals(fr.arrivability(plan.getSolution(), 1), plan.getArrivability(), 1e-9);
+		}
+		assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+		assertTrue(pool.isShutdown());
+	}
+}
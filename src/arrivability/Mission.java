@@ -0,0 +1,63 @@
+package arrivability;
+
+import java.util.logging.Logger;
+
+/**
+ * A mission of a team of robots from a source to a target
+ */
+public final class Mission {
+
+	private static final Logger logger = Logger.getLogger(Mission.class.getName());
+	private final Point source;
+	private final Point target;
+
+	/**
+	 * Constructor
+	 * @param source source point
+	 * @param target target point
+	 */
+	public Mission(Point source, Point target) {
+		if (source == null || target == null) {
+			logger.severe("Not a valid mission");
+			throw new IllegalArgumentException("Not a valid mission");
+		}
+		this.source = source;
+		this.target = target;
+	}
+
+	/**
+	 * Return the source point
+	 * @return the source point
+	 */
+	public Point getSource() {
+		return source;
+	}
+
+	/**
+	 * Return the target point
+	 * @return the target point
+	 */
+	public Point getTarget() {
+		return target;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (!(other instanceof Mission))
+			return false;
+		Mission mission = (Mission) other;
+		return source.equals(mission.source) && target.equals(mission.target);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * source.hashCode() + target.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return source + " -> " + target;
+	}
+}
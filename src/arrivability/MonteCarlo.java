@@ -0,0 +1,465 @@
+package arrivability;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+/**
+ * Monte Carlo estimation of arrivability. Only cells that can block some path
+ * are sampled. They are grouped into strata of equal blocking rate, and a trial
+ * jumps from one blocking cell to the next by geometric skipping instead of
+ * flipping a coin for every vertex of the failure group.
+ */
+public class MonteCarlo {
+
+	private static final Logger logger = Logger.getLogger(MonteCarlo.class.getName());
+	private static final int BATCH = 4096;         // number of trials in one task
+	private final int numberOfPaths;
+	private final int[] cells;                     // failure group indices of cells that can block a path
+	private final int[] start;                     // cells[start[s]], ..., cells[start[s + 1] - 1] form stratum s
+	private final int[] level;                     // the minimum radius for a blocker in stratum s to block a path
+	private final double[] logSurvive;             // log(1 - blocking rate) of a cell in stratum s
+	private final double logNoEvent;               // log of the probability that no cell blocks a path
+	private final long[] blocked;                  // fixed radius: for each cell, the mask of blocked paths
+	private final int[] distance;                  // random radius: distance from each cell to each path
+	private final double logRadius;                // random radius: log(1 - geometric parameter)
+
+	/**
+	 * Constructor for the fixed radius model
+	 * @param areas bitset representation of forbidden areas, one for each path
+	 * @param failure failure probability for each vertex
+	 */
+	public MonteCarlo(List<BitSet> areas, double failure) {
+		numberOfPaths = areas.size();
+		checkArguments(failure);
+		long[][] pathAreas = new long[numberOfPaths][];
+		BitSet union = new BitSet();
+		for (int j = 0; j < numberOfPaths; ++j) {
+			pathAreas[j] = areas.get(j).toLongArray();
+			union.or(areas.get(j));
+		}
+		cells = union.stream().toArray();
+		blocked = new long[cells.length];
+		for (int i = 0; i < cells.length; ++i) {
+			int word = cells[i] >>> 6;
+			for (int j = 0; j < numberOfPaths; ++j) {
+				if (word < pathAreas[j].length && ((pathAreas[j][word] >>> cells[i]) & 1) == 1)
+					blocked[i] |= 1L << j;
+			}
+		}
+		// a single stratum, every cell of the union blocks with the failure probability
+		int strata = failure > 0 && cells.length > 0 ? 1 : 0;
+		start = strata == 1 ? new int[]{0, cells.length} : new int[]{0};
+		level = new int[strata];
+		logSurvive = new double[strata];
+		if (strata == 1)
+			logSurvive[0] = Math.log1p(-failure);
+		logNoEvent = strata == 1 ? cells.length * logSurvive[0] : 0.0;
+		distance = null;
+		logRadius = Double.NEGATIVE_INFINITY;
+	}
+
+	/**
+	 * Constructor for the random radius model
+	 * @param fields for each path, the distance from the path to every vertex of the failure group
+	 * @param failure failure probability for each vertex
+	 * @param geometricParameter the parameter of the geometric distribution of the radius
+	 */
+	public MonteCarlo(List<int[]> fields, double failure, double geometricParameter) {
+		numberOfPaths = fields.size();
+		checkArguments(failure);
+		logRadius = Math.log1p(-geometricParameter);
+		int numberOfCells = numberOfPaths == 0 ? 0 : fields.get(0).length;
+		// the smallest radius needed by a blocker in each cell to block some path
+		int[] nearest = new int[numberOfCells];
+		int maxLevel = -1;
+		for (int c = 0; c < numberOfCells; ++c) {
+			nearest[c] = Integer.MAX_VALUE;
+			for (int[] field : fields)
+				nearest[c] = Math.min(nearest[c], field[c]);
+			if (nearest[c] != Integer.MAX_VALUE && blockingRate(failure, nearest[c]) > 0)
+				maxLevel = Math.max(maxLevel, nearest[c]);
+		}
+		// bucket cells by their smallest radius
+		int[] count = new int[maxLevel + 2];
+		for (int c = 0; c < numberOfCells; ++c)
+			if (nearest[c] <= maxLevel)
+				++count[nearest[c] + 1];
+		int strata = 0;
+		for (int d = 0; d <= maxLevel; ++d)
+			if (count[d + 1] > 0)
+				++strata;
+		start = new int[strata + 1];
+		level = new int[strata];
+		logSurvive = new double[strata];
+		double logNone = 0.0;
+		for (int d = 0, s = 0; d <= maxLevel; ++d) {
+			if (count[d + 1] == 0)
+				continue;
+			level[s] = d;
+			logSurvive[s] = Math.log1p(-blockingRate(failure, d));
+			start[s + 1] = start[s] + count[d + 1];
+			logNone += count[d + 1] * logSurvive[s];
+			++s;
+		}
+		logNoEvent = logNone;
+		for (int d = 1; d < count.length; ++d)
+			count[d] += count[d - 1];
+		cells = new int[start[strata]];
+		for (int c = 0; c < numberOfCells; ++c)
+			if (nearest[c] <= maxLevel)
+				cells[count[nearest[c]]++] = c;
+		distance = new int[cells.length * numberOfPaths];
+		for (int i = 0; i < cells.length; ++i)
+			for (int j = 0; j < numberOfPaths; ++j)
+				distance[i * numberOfPaths + j] = fields.get(j)[cells[i]];
+		blocked = null;
+	}
+
+	/**
+	 * Return the number of paths
+	 * @return the number of paths
+	 */
+	public int size() {
+		return numberOfPaths;
+	}
+
+	/**
+	 * Return the number of cells that can block a path
+	 * @return the size of the union of all forbidden areas
+	 */
+	public int unionSize() {
+		return cells.length;
+	}
+
+	/**
+	 * Estimate arrivability with a random seed
+	 * @param request the number of request robots
+	 * @param trials the number of trials
+	 * @return estimated arrivability
+	 */
+	public Estimate estimate(int request, int trials) {
+		return estimate(request, trials, new SplittableRandom().nextLong());
+	}
+
+	/**
+	 * Estimate arrivability, trials are run in parallel with independent streams split from the seed
+	 * @param request the number of request robots
+	 * @param trials the number of trials
+	 * @param seed the seed of the random streams
+	 * @return estimated arrivability
+	 */
+	public Estimate estimate(int request, int trials, long seed) {
+		if (trials <= 0) {
+			logger.severe("Not a valid number of trials");
+			throw new IllegalArgumentException("Not a valid number of trials");
+		}
+		return binomial(count(request, trials, new SplittableRandom(seed)), trials);
+	}
+
+	/**
+	 * Estimate arrivability by sequential sampling, stop once the confidence interval is narrow enough
+	 * @param request the number of request robots
+	 * @param halfWidth target half width of the confidence interval
+	 * @param confidence confidence level, e.g., 0.95
+	 * @param interval ConfidenceInterval.WILSON or ConfidenceInterval.CLOPPER_PEARSON
+	 * @param maxTrials the maximum number of trials
+	 * @param seed the seed of the random streams
+	 * @return estimated arrivability
+	 */
+	public Estimate estimate(int request, double halfWidth, double confidence, int interval, int maxTrials, long seed) {
+		if (maxTrials <= 0 || !(halfWidth > 0)) {
+			logger.severe("Not a valid stopping rule");
+			throw new IllegalArgumentException("Not a valid stopping rule");
+		}
+		SplittableRandom random = new SplittableRandom(seed);
+		long successes = 0;
+		int trials = 0;
+		// double the sample size in every round
+		for (int round = Math.min(BATCH, maxTrials); ; round = Math.min(trials, maxTrials - trials)) {
+			successes += count(request, round, random);
+			trials += round;
+			double[] bounds = ConfidenceInterval.of(interval, successes, trials, confidence);
+			if ((bounds[1] - bounds[0]) / 2 <= halfWidth || trials == maxTrials)
+				break;
+		}
+		logger.fine("Sequential sampling stops after " + trials + " trials");
+		return binomial(successes, trials);
+	}
+
+	/**
+	 * Decide which of two solutions has higher arrivability with common random numbers.
+	 * The first sizeA paths of this engine form solution A and the rest form solution B,
+	 * so both solutions are evaluated against the same blockers in every trial.
+	 * @param sizeA the number of paths in solution A
+	 * @param request the number of request robots
+	 * @param confidence confidence level of the decision
+	 * @param maxTrials the maximum number of trials
+	 * @param seed the seed of the random streams
+	 * @return 1 if A is better, -1 if B is better, 0 if undecided within maxTrials
+	 */
+	public int compare(int sizeA, int request, double confidence, int maxTrials, long seed) {
+		return compare(sizeA, request, 0.0, confidence, maxTrials, seed);
+	}
+
+	/**
+	 * Decide which of two solutions has higher arrivability by more than a margin. The
+	 * difference of arrivability is the rate of discordant trials, where only one solution
+	 * survives, times 2 theta - 1, where theta is the fraction of them won by A. A side wins
+	 * once the product of the lower confidence bounds of both factors exceeds the margin.
+	 * @param sizeA the number of paths in solution A
+	 * @param request the number of request robots
+	 * @param margin the smallest difference of arrivability that decides the comparison
+	 * @param confidence confidence level of the decision
+	 * @param maxTrials the maximum number of trials
+	 * @param seed the seed of the random streams
+	 * @return 1 if A is better by more than margin, -1 if B is, 0 if undecided within maxTrials
+	 */
+	public int compare(int sizeA, int request, double margin, double confidence, int maxTrials, long seed) {
+		if (sizeA < 0 || sizeA > numberOfPaths || maxTrials <= 0 || !(margin >= 0)) {
+			logger.severe("Not a valid comparison");
+			throw new IllegalArgumentException("Not a valid comparison");
+		}
+		long maskA = sizeA == Long.SIZE ? -1L : (1L << sizeA) - 1, maskB = ~maskA;
+		int sizeB = numberOfPaths - sizeA;
+		SplittableRandom random = new SplittableRandom(seed);
+		long onlyA = 0, onlyB = 0;
+		int trials = 0;
+		double alpha = 1 - confidence;
+		for (int round = Math.min(BATCH, maxTrials); ; round = Math.min(trials, maxTrials - trials)) {
+			int tasks = (round + BATCH - 1) / BATCH, size = round;
+			SplittableRandom[] randoms = split(random, tasks);
+			long[] counts = IntStream.range(0, tasks).parallel().mapToObj(t -> {
+				long[] count = new long[2];
+				for (int i = Math.min(BATCH, size - t * BATCH); i > 0; --i) {
+					long dead = trial(randoms[t]);
+					boolean a = sizeA - Long.bitCount(dead & maskA) >= request;
+					boolean b = sizeB - Long.bitCount(dead & maskB) >= request;
+					if (a && !b)
+						++count[0];
+					else if (b && !a)
+						++count[1];
+				}
+				return count;
+			}).reduce(new long[2], (x, y) -> new long[]{x[0] + y[0], x[1] + y[1]});
+			onlyA += counts[0];
+			onlyB += counts[1];
+			trials += round;
+			// every look spends half of the remaining error budget
+			alpha /= 2;
+			if (onlyA + onlyB > 0) {
+				// the two intervals share the error budget of this look
+				double discordant = ConfidenceInterval.of(ConfidenceInterval.CLOPPER_PEARSON, onlyA + onlyB, trials, 1 - alpha / 2)[0];
+				double[] bounds = ConfidenceInterval.of(ConfidenceInterval.CLOPPER_PEARSON, onlyA, onlyA + onlyB, 1 - alpha / 2);
+				if (bounds[0] > 0.5 && discordant * (2 * bounds[0] - 1) > margin)
+					return 1;
+				if (bounds[1] < 0.5 && discordant * (1 - 2 * bounds[1]) > margin)
+					return -1;
+			}
+			if (trials == maxTrials)
+				return 0;
+		}
+	}
+
+	/**
+	 * Estimate the failure rate by importance sampling. Trials are drawn conditioned on at least
+	 * one blocker hitting some path, and the conditional failure rate is reweighted by the
+	 * probability of that event, so rare failures are observed in almost every trial.
+	 * @param request the number of request robots
+	 * @param relativeError target ratio of the standard error to the estimated failure rate
+	 * @param maxTrials the maximum number of trials
+	 * @param seed the seed of the random streams
+	 * @return estimated failure rate, i.e., the probability that fewer than request paths survive
+	 */
+	public Estimate failureRate(int request, double relativeError, int maxTrials, long seed) {
+		if (maxTrials <= 0 || !(relativeError > 0)) {
+			logger.severe("Not a valid stopping rule");
+			throw new IllegalArgumentException("Not a valid stopping rule");
+		}
+		if (numberOfPaths < request)
+			return new Estimate(1.0, 0.0, 0);
+		double weight = -Math.expm1(logNoEvent);   // probability that some cell blocks a path
+		if (weight == 0)
+			return new Estimate(0.0, 0.0, 0);
+		SplittableRandom random = new SplittableRandom(seed);
+		long failures = 0;
+		int trials = 0;
+		for (int round = Math.min(BATCH, maxTrials); ; round = Math.min(trials, maxTrials - trials)) {
+			failures += round - count(request, round, random, true);
+			trials += round;
+			Estimate conditional = binomial(failures, trials);
+			if ((failures > 0 && conditional.getStandardError() <= relativeError * conditional.getMean()) || trials == maxTrials)
+				break;
+		}
+		Estimate conditional = binomial(failures, trials);
+		logger.fine("Importance sampling stops after " + trials + " trials");
+		return new Estimate(weight * conditional.getMean(), weight * conditional.getStandardError(), trials);
+	}
+
+	/**
+	 * Count successful trials, trials are run in parallel with independent streams split from random
+	 * @param request the number of request robots
+	 * @param trials the number of trials
+	 * @param random random stream
+	 * @return the number of trials in which at least request paths survive
+	 */
+	private long count(int request, int trials, SplittableRandom random) {
+		return count(request, trials, random, false);
+	}
+
+	/**
+	 * Count successful trials, trials are run in parallel with independent streams split from random
+	 * @param request the number of request robots
+	 * @param trials the number of trials
+	 * @param random random stream
+	 * @param conditional whether trials are conditioned on at least one blocking cell
+	 * @return the number of trials in which at least request paths survive
+	 */
+	private long count(int request, int trials, SplittableRandom random, boolean conditional) {
+		int tasks = (trials + BATCH - 1) / BATCH;
+		SplittableRandom[] randoms = split(random, tasks);
+		return IntStream.range(0, tasks).parallel().mapToLong(t -> {
+			int count = Math.min(BATCH, trials - t * BATCH);
+			long success = 0;
+			for (int i = 0; i < count; ++i) {
+				long dead = conditional ? conditionalTrial(randoms[t]) : trial(randoms[t]);
+				if (numberOfPaths - Long.bitCount(dead) >= request)
+					++success;
+			}
+			return success;
+		}).sum();
+	}
+
+	/**
+	 * Sample one configuration of blockers
+	 * @param random random stream
+	 * @return the mask of blocked paths
+	 */
+	long trial(SplittableRandom random) {
+		long dead = 0L;
+		for (int s = 0; s < level.length; ++s)
+			dead = sample(s, start[s] + skip(random, s), dead, random);
+		return dead;
+	}
+
+	/**
+	 * Sample one configuration of blockers conditioned on at least one cell blocking a path
+	 * @param random random stream
+	 * @return the mask of blocked paths
+	 */
+	private long conditionalTrial(SplittableRandom random) {
+		// the first blocking cell is found by inverting the distribution of the number of
+		// non-blocking cells before it, restricted to configurations with a blocking cell
+		double target = Math.log1p(Math.expm1(logNoEvent) * (1.0 - random.nextDouble()));
+		double cumulative = 0.0;
+		for (int s = 0; s < level.length; ++s) {
+			int size = start[s + 1] - start[s];
+			double before = Math.floor((target - cumulative) / logSurvive[s]);
+			if (before < size || s == level.length - 1) {
+				int first = start[s] + (int) Math.min(before, size - 1);
+				long dead = block(first, s, random);
+				dead = sample(s, first + 1 + skip(random, s), dead, random);
+				for (++s; s < level.length; ++s)
+					dead = sample(s, start[s] + skip(random, s), dead, random);
+				return dead;
+			}
+			cumulative += size * logSurvive[s];
+		}
+		return 0L;
+	}
+
+	/**
+	 * Visit the blocking cells of a stratum
+	 * @param s stratum
+	 * @param first the position of the first blocking cell
+	 * @param dead the mask of blocked paths so far
+	 * @param random random stream
+	 * @return the mask of blocked paths
+	 */
+	private long sample(int s, double first, long dead, SplittableRandom random) {
+		// jump directly from one blocking cell to the next one
+		for (double index = first; index < start[s + 1]; index += 1 + skip(random, s))
+			dead |= block((int) index, s, random);
+		return dead;
+	}
+
+	/**
+	 * Compute the paths blocked by a blocking cell
+	 * @param index the position of the cell
+	 * @param s the stratum of the cell
+	 * @param random random stream
+	 * @return the mask of blocked paths
+	 */
+	private long block(int index, int s, SplittableRandom random) {
+		if (blocked != null)
+			return blocked[index];
+		// the radius is at least level[s], and the rest is memoryless
+		double radius = level[s] + Math.floor(Math.log(1.0 - random.nextDouble()) / logRadius);
+		long dead = 0L;
+		for (int j = 0, base = index * numberOfPaths; j < numberOfPaths; ++j)
+			if (distance[base + j] <= radius)
+				dead |= 1L << j;
+		return dead;
+	}
+
+	/**
+	 * Sample the number of non-blocking cells before the next blocking cell
+	 * @param random random stream
+	 * @param s stratum
+	 * @return a geometric random variable
+	 */
+	private double skip(SplittableRandom random, int s) {
+		return Math.floor(Math.log(1.0 - random.nextDouble()) / logSurvive[s]);
+	}
+
+	/**
+	 * Check the arguments of constructors
+	 * @param failure failure probability for each vertex
+	 */
+	private void checkArguments(double failure) {
+		if (numberOfPaths > Long.SIZE) {
+			logger.severe("Monte Carlo supports at most " + Long.SIZE + " paths");
+			throw new IllegalArgumentException("Monte Carlo supports at most " + Long.SIZE + " paths");
+		}
+		if (!Double.isFinite(failure) || failure < 0 || failure > 1) {
+    		logger.severe("Not a valid probaiblity");
+    		throw new IllegalArgumentException("Not a valid probaiblity");
+    	}
+	}
+
+	/**
+	 * The probability that a cell blocks a path at a distance
+	 * @param failure failure probability for each vertex
+	 * @param d the distance
+	 * @return blocking rate
+	 */
+	private double blockingRate(double failure, int d) {
+		return failure * Math.pow(Math.exp(logRadius), d);
+	}
+
+	/**
+	 * Split a random stream into independent streams
+	 * @param random random stream
+	 * @param n the number of streams
+	 * @return independent streams
+	 */
+	static SplittableRandom[] split(SplittableRandom random, int n) {
+		SplittableRandom[] result = new SplittableRandom[n];
+		for (int i = 0; i < n; ++i)
+			result[i] = random.split();
+		return result;
+	}
+
+	/**
+	 * Estimate for a proportion
+	 * @param successes the number of successes
+	 * @param trials the number of trials
+	 * @return estimated proportion with its standard error
+	 */
+	static Estimate binomial(long successes, long trials) {
+		double mean = (double) successes / trials;
+		return new Estimate(mean, Math.sqrt(mean * (1 - mean) / trials), trials);
+	}
+}
@@ -2,7 +2,6 @@ package arrivability;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -10,6 +9,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntUnaryOperator;
 import java.util.stream.IntStream;
 
 /**
@@ -43,11 +46,23 @@ public class PathGeneration {
 	 * @return a list of generated paths
 	 */
 	public List<Path<Point>> getPaths(int numberOfPaths, Point source, Point target) {
+		return getPaths(numberOfPaths, source, target, Deadline.none());
+	}
+	
+	/**
+	 * Generate paths until a deadline
+	 * @param numberOfPaths the number of paths to be generated
+	 * @param source source point
+	 * @param target target point
+	 * @param deadline wall-clock deadline
+	 * @return a list of generated paths, fewer than numberOfPaths if the deadline passes
+	 */
+	public List<Path<Point>> getPaths(int numberOfPaths, Point source, Point target, Deadline deadline) {
 		switch (mode) {
 			case RANDOM: 
-				return randomPaths(numberOfPaths, source, target);
+				return randomPaths(numberOfPaths, source, target, deadline);
 			case REWEIGHT:
-				return reweightPaths(numberOfPaths, source, target);
+				return reweightPaths(numberOfPaths, source, target, deadline);
 		}
 		return null;
 	}
@@ -60,44 +75,81 @@ public class PathGeneration {
 	 * @return a list of paths
 	 */
 	public List<Path<Point>> reweightPaths(int numberOfPaths, Point source, Point target) {
-		Path<Point>[] paths = new Path[numberOfPaths];
+		return reweightPaths(numberOfPaths, source, target, Deadline.none());
+	}
+	
+	/**
+	 * Generate a set of paths by reweighting until a deadline
+	 * @param numberOfPaths the number of path to be generated
+	 * @param source sourece point
+	 * @param target target point
+	 * @param deadline wall-clock deadline
+	 * @return a list of paths
+	 */
+	public List<Path<Point>> reweightPaths(int numberOfPaths, Point source, Point target, Deadline deadline) {
+		List<Path<Point>> paths = new ArrayList<>(numberOfPaths);
+		Map<Point, Map<Point, Double>> edgeWeight = initialWeights();
+		// Reweighting
+		for (int i = 0; i < numberOfPaths && !deadline.expired(); ++i)
+			paths.add(reweightPath(source, target, edgeWeight));
+		return paths;
+	}
+	
+	/**
+	 * Generate paths one by one into a queue, which blocks when the queue is full,
+	 * until enough paths are generated or the consumer asks to stop
+	 * @param numberOfPaths the largest number of paths to be generated
+	 * @param source source point
+	 * @param target target point
+	 * @param queue the queue receiving paths
+	 * @param stopped whether the consumer asks to stop
+	 * @return the number of generated paths
+	 * @throws InterruptedException if interrupted while waiting for the queue
+	 */
+	public int streamPaths(int numberOfPaths, Point source, Point target, BlockingQueue<Path<Point>> queue, 
+			BooleanSupplier stopped) throws InterruptedException {
+		Map<Point, Map<Point, Double>> edgeWeight = mode == REWEIGHT ? initialWeights() : null;
+		int count = 0;
+		for (; count < numberOfPaths && !stopped.getAsBoolean(); ++count)
+			queue.put(mode == REWEIGHT ? reweightPath(source, target, edgeWeight) : randomPath(source, target));
+		return count;
+	}
+	
+	/**
+	 * Initialize the weight of every edge to 1
+	 * @return edge weight
+	 */
+	private Map<Point, Map<Point, Double>> initialWeights() {
 		Map<Point, Map<Point, Double>> edgeWeight = new HashMap<>();
-		// Initialization of edge weight
 		for (Point vertex : g.vertexSet()) {
 			edgeWeight.put(vertex, new HashMap<>());
 			for (Point neighbor : g.getNeighbors(vertex)) {
 				edgeWeight.get(vertex).put(neighbor, 1.0);
 			}
 		}
-		
-		// Reweighting
-		for (int i = 0; i < numberOfPaths; ++i) {
-			Path<Point> path = reweightPath(source, target, edgeWeight);
-			paths[i] = path;
-			Point previous = null;
-			for (Point vertex : path) {
-				if (previous == null) {
-					previous = vertex;
-					continue;
-				}
-				double oldValue = edgeWeight.get(previous).get(vertex);
-				edgeWeight.get(previous).put(vertex, oldValue + 1.0);
-				previous = vertex;
-			}
-		}
-		return Arrays.asList(paths);
+		return edgeWeight;
 	}
 	
 	/**
 	 * Generate a path by reweighting
 	 * @param source source point
 	 * @param target target point
-	 * @param edgeWeight edge weight
+	 * @param edgeWeight edge weight, increased along the path
 	 * @return a shortest path w.r.t edge weight
 	 */
 	private Path<Point> reweightPath(Point source, Point target, 
 			Map<Point, Map<Point, Double>> edgeWeight) {
 		Path<Point> path = g.shortestPath(source, target, edgeWeight);
+		Point previous = null;
+		for (Point vertex : path) {
+			if (previous == null) {
+				previous = vertex;
+				continue;
+			}
+			double oldValue = edgeWeight.get(previous).get(vertex);
+			edgeWeight.get(previous).put(vertex, oldValue + 1.0);
+			previous = vertex;
+		}
 		return path;
 	}
 	
@@ -109,25 +161,64 @@ public class PathGeneration {
 	 * @return a list of random paths
 	 */
 	public List<Path<Point>> randomPaths(int numberOfPaths, Point source, Point target) {
+		return randomPaths(numberOfPaths, source, target, Deadline.none());
+	}
+	
+	/**
+	 * Generate a set of random paths until a deadline
+	 * @param numberOfPaths the number of paths to be generated
+	 * @param source source point 
+	 * @param target target point
+	 * @param deadline wall-clock deadline
+	 * @return a list of random paths
+	 */
+	public List<Path<Point>> randomPaths(int numberOfPaths, Point source, Point target, Deadline deadline) {
 		Path<Point>[] paths = new Path[numberOfPaths];
 		if (MineField.PARALLEL)
 			IntStream.range(0, numberOfPaths).parallel().forEach(i -> {
-				paths[i] = randomPath(source, target);
+				if (!deadline.expired())
+					paths[i] = randomPath(source, target);
 			});
 		else {
-			for (int i = 0; i < numberOfPaths; ++i)
+			for (int i = 0; i < numberOfPaths && !deadline.expired(); ++i)
 				paths[i] = randomPath(source, target);
 		}
-		return Arrays.asList(paths);
+		List<Path<Point>> result = new ArrayList<>(numberOfPaths);
+		for (Path<Point> path : paths)
+			if (path != null)
+				result.add(path);
+		return result;
+	}
+	
+	/**
+	 * Generate a random path
+	 * @param source source point
+	 * @param target target point
+	 * @return a random path
+	 */
+	public Path<Point> randomPath(Point source, Point target) {
+		return randomPath(source, target, rand::nextInt);
+	}
+	
+	/**
+	 * Generate a random path from a given random number stream
+	 * @param source source point
+	 * @param target target point
+	 * @param random random number stream
+	 * @return a random path
+	 */
+	public Path<Point> randomPath(Point source, Point target, SplittableRandom random) {
+		return randomPath(source, target, random::nextInt);
 	}
 	
 	/**
 	 * Generate a random path
 	 * @param source source point
 	 * @param target target point
+	 * @param nextInt a random integer less than the argument
 	 * @return a random path
 	 */
-	public Path<Point> randomPath(Point source, Point target) {		
+	private Path<Point> randomPath(Point source, Point target, IntUnaryOperator nextInt) {		
 		Set<Point> inqueue = new HashSet<>();
 		Set<Point> inpath = new HashSet<>();
 		Map<Point, Point> parent = new HashMap<>();
@@ -136,7 +227,7 @@ public class PathGeneration {
 		myqueue.add(source);
 		parent.put(source, null);
 		while (true) {
-			int index = rand.nextInt(myqueue.size());
+			int index = nextInt.applyAsInt(myqueue.size());
 			Point node = myqueue.remove(index);
 			inqueue.remove(node);
 			inpath.add(node);
@@ -2,11 +2,21 @@ package arrivability;
 
 import java.util.ArrayList;
 import java.util.BitSet;
-import java.util.Collections;
-import java.util.LinkedHashMap;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -19,15 +29,21 @@ import java.util.stream.IntStream;
 public class PathImprovement {
 	
 	private static final Logger logger = Logger.getLogger(PathImprovement.class.getName());
-	private static final int CACHE_SIZE = 100000;
+	private static final int CACHE_SIZE = 100000;           // default capacity of the shortcut cache
+	private static final int APSP_LIMIT = 2000;             // largest graph whose distances are precomputed for sharing
+	private static final int EXCHANGE_INTERVAL = 10;        // iterations between exchanges of the global best
+	private static final int MAX_STEPS = 10000;             // shortcuts between two escapes, which may have no deadline
 	private Graph<Point> g;
 	private FailureRate fr;
-	private Map<ShortCutKey, ShortCutResult> cache = Collections.synchronizedMap(new LinkedHashMap<ShortCutKey, ShortCutResult>() {
-		@Override
-		protected boolean removeEldestEntry(Map.Entry oldest) {
-			return size() > CACHE_SIZE;  
-		}  
-	});
+	private static final long MIX = 0x9E3779B97F4A7C15L;    // multiplier of rolling hashes of vertex sequences
+	// shortcuts by content, shared by all paths with the same prefix and suffix around a segment
+	private final Map<ShortCutKey, ShortCutResult> cache = new ConcurrentHashMap<>();
+	private final AtomicBoolean evicting = new AtomicBoolean();
+	private final AtomicLong clock = new AtomicLong();      // stamps the uses of cached shortcuts
+	private int cacheSize = CACHE_SIZE;
+	private SplittableRandom seeds = new SplittableRandom(); // source of the random streams of chains
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
 	
 	/**
 	 * Constructor
@@ -42,18 +58,36 @@ public class PathImprovement {
 	/**
 	 * Improve the solution by short-cut or escape from local maximum
 	 * @param solution a solution
+	 * @param pg path generation for escapes
+	 * @param request number of requested paths
+	 * @param numberOfIterations number of escapes
 	 * @return a probably better solution
 	 */
 	public List<Path<Point>> improve(List<Path<Point>> solution, PathGeneration pg, int request, int numberOfIterations) {
+		g.reset();
+		System.gc();
+		return improve(solution, pg, request, numberOfIterations, Deadline.none());
+	}
+	
+	/**
+	 * Improve the solution by short-cut or escape from local maximum until a deadline
+	 * @param solution a solution
+	 * @param pg path generation for escapes
+	 * @param request number of requested paths
+	 * @param numberOfIterations number of escapes
+	 * @param deadline wall-clock deadline
+	 * @return the best solution found
+	 */
+	private List<Path<Point>> improve(List<Path<Point>> solution, PathGeneration pg, int request, int numberOfIterations, Deadline deadline) {
 		logger.info("Start to improve");
 		int last = 0;
 		List<Path<Point>> globalMax = new ArrayList<>(solution);
-		g.reset();
-		System.gc();
-		double maxArrivability = fr.arrivability(solution, request);
-		for (int i = 0; i < numberOfIterations; ++i) {
-			while (canImprove(solution, request)) {
-				double arrivability = fr.arrivability(solution, request);
+		// the same stream as the first chain of a portfolio started from the same seed
+		SplittableRandom random = nextSeed().split();
+		double maxArrivability = fr.evaluate(solution, request);
+		for (int i = 0; i < numberOfIterations && !deadline.expired(); ++i) {
+			for (int step = 0; step < MAX_STEPS && !deadline.expired() && canImprove(solution, request, deadline); ++step) {
+				double arrivability = fr.evaluate(solution, request);
 				if (arrivability > maxArrivability) {
 					logger.info("Improved");
 					if (last != i) {
@@ -64,41 +98,174 @@ public class PathImprovement {
 					globalMax = new ArrayList<>(solution);
 				}
 			}
-			escape(solution, pg);
+			escape(solution, pg, random);
 		}
 		logger.info("Local improvement completed with arrivability " + maxArrivability);
+		logger.info("Shortcut cache hit rate " + Math.round(100 * getCacheHitRate()) + "% of " + (hits.sum() + misses.sum()) + " lookups");
 		return globalMax;
 	}
 	
+	/**
+	 * Improve the solution by independent chains of short-cut and escape running in parallel.
+	 * Each chain has its own random stream, and every EXCHANGE_INTERVAL iterations a chain
+	 * restarts from the global best if another chain has found a better solution.
+	 * The graph is not reset, so that all chains share its distance cache.
+	 * @param solution a solution
+	 * @param pg path generation for escapes
+	 * @param request number of requested paths
+	 * @param numberOfIterations number of escapes in each chain
+	 * @param numberOfChains number of chains
+	 * @return a probably better solution
+	 */
+	public List<Path<Point>> improve(List<Path<Point>> solution, PathGeneration pg, int request, int numberOfIterations, int numberOfChains) {
+		if (numberOfChains == 1)
+			return improve(solution, pg, request, numberOfIterations);
+		return improve(solution, pg, request, numberOfIterations, numberOfChains, Deadline.none());
+	}
+	
+	/**
+	 * Improve the solution by one or more chains until a deadline. Chains stop between
+	 * steps of short-cut and escape, and the best solution found so far is returned.
+	 * @param solution a solution
+	 * @param pg path generation for escapes
+	 * @param request number of requested paths
+	 * @param numberOfIterations number of escapes in each chain
+	 * @param numberOfChains number of chains
+	 * @param deadline wall-clock deadline
+	 * @return the best solution found
+	 */
+	public List<Path<Point>> improve(List<Path<Point>> solution, PathGeneration pg, int request, int numberOfIterations, int numberOfChains, Deadline deadline) {
+		if (numberOfChains < 1) {
+			logger.severe("Not a valid number of chains");
+			throw new IllegalArgumentException("Not a valid number of chains");
+		}
+		if (numberOfChains == 1)
+			return improve(solution, pg, request, numberOfIterations, deadline);
+		logger.info("Start to improve with " + numberOfChains + " chains");
+		shareDistances();
+		Incumbent incumbent = new Incumbent(solution, fr.evaluate(solution, request));
+		SplittableRandom seed = nextSeed();
+		List<Callable<Void>> chains = new ArrayList<>(numberOfChains);
+		for (int c = 0; c < numberOfChains; ++c) {
+			SplittableRandom random = seed.split();
+			chains.add(() -> {
+				chain(incumbent, pg, request, numberOfIterations, random, deadline);
+				return null;
+			});
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(numberOfChains);
+		try {
+			for (Future<Void> future : pool.invokeAll(chains))
+				future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			logger.warning("Portfolio interrupted");
+		} catch (ExecutionException e) {
+			logger.severe("Chain failed: " + e.getCause());
+			throw new IllegalStateException("Chain failed", e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+		logger.info("Portfolio completed with arrivability " + incumbent.getValue() + " after " + incumbent.getExchanges() + " exchanges");
+		logger.info("Shortcut cache hit rate " + Math.round(100 * getCacheHitRate()) + "% of " + (hits.sum() + misses.sum()) + " lookups");
+		return incumbent.getSolution();
+	}
+	
+	/**
+	 * Set the seed of the random streams of later improvements, so that runs can be repeated
+	 * @param seed the seed
+	 */
+	public synchronized void setSeed(long seed) {
+		seeds = new SplittableRandom(seed);
+	}
+	
+	/**
+	 * Split a random stream for one improvement, which may run concurrently with others
+	 * @return a new random stream
+	 */
+	private synchronized SplittableRandom nextSeed() {
+		return seeds.split();
+	}
+	
+	/**
+	 * Prepare the graph for concurrent searches without resetting it. On small graphs all
+	 * distances are precomputed, after which the distance maps are only read, so searches do
+	 * not contend on the cache; larger graphs share the synchronized cache of the graph.
+	 */
+	public void shareDistances() {
+		shareDistances(g);
+	}
+	
+	/**
+	 * Prepare a graph for concurrent searches as in shareDistances(). Precomputing replaces
+	 * the distance maps of the graph, so it must finish before any search uses the graph.
+	 * @param g the graph
+	 */
+	public static void shareDistances(Graph<Point> g) {
+		if (g.vertexSet().size() <= APSP_LIMIT)
+			g.unweightedAPSP();
+	}
+	
+	/**
+	 * Run one chain of short-cut and escape
+	 * @param incumbent the global best shared by all chains
+	 * @param pg path generation for escapes
+	 * @param request number of requested paths
+	 * @param numberOfIterations number of escapes
+	 * @param random random stream of this chain
+	 * @param deadline wall-clock deadline
+	 */
+	private void chain(Incumbent incumbent, PathGeneration pg, int request, int numberOfIterations, SplittableRandom random, Deadline deadline) {
+		List<Path<Point>> solution = incumbent.getSolution();
+		double maxArrivability = incumbent.getValue();
+		for (int i = 0; i < numberOfIterations && !deadline.expired() && !Thread.currentThread().isInterrupted(); ++i) {
+			for (int step = 0; step < MAX_STEPS && !deadline.expired() && canImprove(solution, request, deadline); ++step) {
+				double arrivability = fr.evaluate(solution, request);
+				if (arrivability > maxArrivability) {
+					maxArrivability = arrivability;
+					incumbent.offer(solution, arrivability);
+				}
+			}
+			if ((i + 1) % EXCHANGE_INTERVAL == 0 && incumbent.getValue() > maxArrivability) {
+				solution = incumbent.getSolution();
+				maxArrivability = incumbent.getValue();
+				incumbent.exchanged();
+			}
+			escape(solution, pg, random);
+		}
+	}
+	
 	/**
 	 * Escape from a local maximum
 	 * @param solution a solution
+	 * @param pg path generation
+	 * @param random random stream
 	 */
-	private void escape(List<Path<Point>> solution, PathGeneration pg) {
-		Random random = new Random();
+	private void escape(List<Path<Point>> solution, PathGeneration pg, SplittableRandom random) {
 		int randomIndex = random.nextInt(solution.size());
 		Path<Point> path = solution.get(randomIndex);
-		solution.set(randomIndex, escape(path, pg));
+		solution.set(randomIndex, escape(path, pg, random));
 	}
 	
 	/**
 	 * Replace the path by a new path
 	 * @param path a path
+	 * @param pg path generation
+	 * @param random random stream
 	 * @return a new path
 	 */
-	private Path<Point> escape(Path<Point> path, PathGeneration pg) {
+	private Path<Point> escape(Path<Point> path, PathGeneration pg, SplittableRandom random) {
 		logger.fine("Escape from " + path.toString());
 		Path<Point> result = null;
-		Random random = new Random();
 		if (random.nextInt(5) < 4) {
-			return pg.randomPath(path.get(0), path.get(path.size() - 1));
+			return pg.randomPath(path.get(0), path.get(path.size() - 1), random);
 		}
 		int randomBegin = random.nextInt(path.size() - 2);
 		int randomEnd = random.nextInt(path.size() - randomBegin - 1) + randomBegin + 1;
 		assert(0 <= randomEnd && randomEnd < path.size());
 		result = path.slice(0, randomBegin);
 		Path<Point> last = path.slice(randomEnd + 1, path.size());
-		Path<Point> subpath = escape(path, randomBegin, randomEnd);
+		Path<Point> subpath = escape(path, randomBegin, randomEnd, random);
 		if (subpath == null || result.contains(subpath) || last.contains(subpath))
 			return path;
 		result.concate(subpath);
@@ -111,9 +278,10 @@ public class PathImprovement {
 	 * @param path path
 	 * @param randomBegin the begin index of subpath to be replaced
 	 * @param randomEnd the end index of subpath to be replaced
+	 * @param random random stream
 	 * @return a new path
 	 */
-	private Path<Point> escape(Path<Point> path, int randomBegin, int randomEnd) {
+	private Path<Point> escape(Path<Point> path, int randomBegin, int randomEnd, SplittableRandom random) {
 		logger.finer("Escape from " + path.toString() + " " + randomBegin + " " + randomEnd);
 		Path<Point> shortest = g.pathQuery(path.get(randomBegin), path.get(randomEnd));
 	    Point midPoint = shortest.get(shortest.size() / 2);
@@ -123,7 +291,6 @@ public class PathImprovement {
 	    		if (!path.contains(point))
 	    			points.add(point);
 	    	}
-	    Random random = new Random();
 	    if (points.size() == 0)
 	    	return null;
 	    
@@ -141,34 +308,33 @@ public class PathImprovement {
 	/**
 	 * Try to improve current solution
 	 * @param solution current solution
+	 * @param request number of requested paths
+	 * @param deadline wall-clock deadline, shortcuts not tried by then are skipped
 	 * @return true if solution is improved, false otherwise 
 	 */
-	private boolean canImprove(List<Path<Point>> initial, int request) {
+	private boolean canImprove(List<Path<Point>> initial, int request, Deadline deadline) {
 		logger.fine("Try to improve");
+		if (fr.usesPairedComparison() && !fr.preferExact(initial, request))
+			return canImproveByComparison(initial, request, deadline);
 		Result result = null;
-		if (fr instanceof RandomRadius) {
+		if (fr instanceof RandomRadius || !fr.preferExact(initial, request)) {
+			// the model evaluates paths, so every shortcut is materialized
 			result = IntStream.range(0, initial.size()).parallel().mapToObj(i -> {
 				List<Path<Point>> copy = new ArrayList(initial);
-				double obj = 0.0;
-				Path<Point> path = initial.get(i), newPath = null;
-
-				for (int j = 0; j < path.size(); ++j) {
-					for (int k = j + 2; k < path.size(); ++k) {
-						ShortCutResult r = shortcut(path, j, k);
-						if (r == null)
+				Shortcuts shortcuts = new Shortcuts(initial.get(i), false);
+				Result best = new Result(0.0, i, shortcuts);
+				for (int j = 0; j < shortcuts.size() && !deadline.expired(); ++j) {
+					for (int k = j + 2; k < shortcuts.size(); ++k) {
+						if (!available(shortcuts, j, k))
 							continue;
-						copy.set(i, r.path);
-						double arrivability = fr.arrivability(copy, request);
-						if (arrivability > obj) {
-							obj = arrivability;
-							newPath = r.path;
-						}
+						copy.set(i, shortcuts.path(j, k));
+						best.offer(fr.evaluate(copy, request), j, k);
 					}
 				}
-				return new Result(obj, i, newPath);
+				return best;
 			}).collect(Collectors.maxBy((a, b) -> Double.compare(a.sum, b.sum))).get();
-		}
-		else if (request == 1) {
+		} else {
+			// Only terms containing path i change, so the power set of the other paths is built once per path
 			FixedRadius fr = (FixedRadius) (this.fr);
 			result = IntStream.range(0, initial.size()).parallel().mapToObj(i -> {
 				List<Path<Point>> initialCopy = new ArrayList<>();
@@ -176,52 +342,62 @@ public class PathImprovement {
 					if (index != i) {
 						initialCopy.add(initial.get(index));
 					}
-				List<BitSet> bitSuperSet = fr.fromAreasToBitSuperSets(fr.forbiddenAreas(initialCopy));
+				AreaPowerSet bitSuperSet = fr.fromAreasToBitSuperSets(fr.forbiddenAreas(initialCopy));
 				double currentArrivability = fr.arrivabilityFromBitSuperSets(bitSuperSet, request);
-
-				double obj = 0.0;
-				Path<Point> path = initial.get(i), newPath = null;
-
-				for (int j = 0; j < path.size(); ++j) {
-					for (int k = j + 2; k < path.size(); ++k) {
-						ShortCutResult r = shortcut(path, j, k);
-						if (r == null)
+				Shortcuts shortcuts = new Shortcuts(initial.get(i), true);
+				Result best = new Result(0.0, i, shortcuts);
+				for (int j = 0; j < shortcuts.size() && !deadline.expired(); ++j) {
+					for (int k = j + 2; k < shortcuts.size(); ++k) {
+						BitSet area = shortcut(shortcuts, j, k);
+						if (area == null)
 							continue;
-						double arrivability = fr.arrivabilityFromBitSuperSets(bitSuperSet, currentArrivability, r.area, request);
-						if (arrivability > obj) {
-							obj = arrivability;
-							newPath = r.path;
-						}
+						best.offer(fr.arrivabilityFromBitSuperSets(bitSuperSet, currentArrivability, area, request), j, k);
 					}
 				}
-				return new Result(obj, i, newPath);
-			}).collect(Collectors.maxBy((a, b) -> Double.compare(a.sum, b.sum))).get();
-		} else {
-			FixedRadius fr = (FixedRadius) (this.fr);
-			result = IntStream.range(0, initial.size()).parallel().mapToObj(i -> {
-				List<BitSet> areas = fr.fromAreasToBitSets(fr.forbiddenAreas(initial));
-				double obj = 0.0;
-				Path<Point> path = initial.get(i), newPath = null;
-
-				for (int j = 0; j < path.size(); ++j) {
-					for (int k = j + 2; k < path.size(); ++k) {
-						ShortCutResult r = shortcut(path, j, k);
-						if (r == null)
-							continue;
-						areas.set(i, r.area);
-						double arrivability = fr.arrivabilityFromBitSets(areas, request);
-						if (arrivability > obj) {
-							obj = arrivability;
-							newPath = r.path;
-						}
-					}
-				}
-				return new Result(obj, i, newPath);
+				return best;
 			}).collect(Collectors.maxBy((a, b) -> Double.compare(a.sum, b.sum))).get();
 		}
 		
-		if (result.sum > fr.arrivability(initial, request) + MaximizeArrivability.EPSILON) {
-			initial.set(result.removeIndex, result.newPath);
+		if (result.sum > fr.evaluate(initial, request) + MaximizeArrivability.EPSILON) {
+			initial.set(result.removeIndex, result.newPath());
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Try to improve current solution by the first shortcut that paired Monte Carlo trials
+	 * decide to be better. Estimating every shortcut to a bounded half width costs far more
+	 * trials than a comparison, which stops once the difference is clear. All shortcuts of
+	 * the solution share the error budget of the comparisons.
+	 * @param initial current solution
+	 * @param request number of requested paths
+	 * @param deadline wall-clock deadline, shortcuts not tried by then are skipped
+	 * @return true if solution is improved, false otherwise
+	 */
+	private boolean canImproveByComparison(List<Path<Point>> initial, int request, Deadline deadline) {
+		AtomicBoolean found = new AtomicBoolean();
+		int comparisons = Math.max(1, initial.stream().mapToInt(path -> (path.size() - 1) * (path.size() - 2) / 2).sum());
+		Optional<Result> result = IntStream.range(0, initial.size()).parallel().mapToObj(i -> {
+			List<Path<Point>> copy = new ArrayList<>(initial);
+			Shortcuts shortcuts = new Shortcuts(initial.get(i), false);
+			for (int j = 0; j < shortcuts.size() && !deadline.expired() && !found.get(); ++j) {
+				for (int k = j + 2; k < shortcuts.size() && !found.get(); ++k) {
+					if (!available(shortcuts, j, k))
+						continue;
+					copy.set(i, shortcuts.path(j, k));
+					if (fr.isBetter(copy, initial, request, comparisons)) {
+						found.set(true);
+						Result better = new Result(0.0, i, shortcuts);
+						better.offer(1.0, j, k);
+						return better;
+					}
+				}
+			}
+			return null;
+		}).filter(Objects::nonNull).findFirst();
+		if (result.isPresent()) {
+			initial.set(result.get().removeIndex, result.get().newPath());
 			return true;
 		}
 		return false;
@@ -229,61 +405,324 @@ public class PathImprovement {
 	
 	/**
 	 * Short cut the path
-	 * @param path a path to be shortcut
+	 * @param shortcuts shortcuts of a path
 	 * @param j the start index of shortcut
 	 * @param k the end index of shortcut
-	 * @return a new path if shortcut is available, null otherwise
+	 * @return forbidden area of the new path if shortcut is available, null otherwise
 	 */
-	private ShortCutResult shortcut(Path<Point> path, int j, int k) {
-		ShortCutKey key = new ShortCutKey(path, j, k);
-		if (cache.containsKey(key)) {
-			return cache.get(key);				
-		}
-		Path<Point> subpath = g.pathQuery(path.get(j), path.get(k));
-		Path<Point> first = path.slice(0, j);
-		if (subpath.contains(first))
-			return null;
-		Path<Point> last = path.slice(k + 1, path.size());
-		if (subpath.contains(last))
-			return null;
-		first.concate(subpath);
-		first.concate(last);
-		ShortCutResult r = new ShortCutResult(first, fr.fromPathToBitSet(first));
-		cache.put(key, r);
-		return r;
+	private BitSet shortcut(Shortcuts shortcuts, int j, int k) {
+		ShortCutKey key = shortcuts.key(j, k);
+		ShortCutResult r = cache.get(key);
+		// an entry cached by a model evaluating paths has no area yet
+		if (r != null && (!r.available || r.area != null)) {
+			hits.increment();
+			r.lastUse = clock.incrementAndGet();
+			return r.area;
+		}
+		misses.increment();
+		BitSet area = shortcuts.area(j, k);
+		// unavailable shortcuts are cached as well, with a null area
+		store(key, new ShortCutResult(area != null, area));
+		return area;
+	}
+	
+	/**
+	 * Test whether a shortcut is available, without computing its forbidden area, for models
+	 * that evaluate paths rather than areas
+	 * @param shortcuts shortcuts of a path
+	 * @param j the start index of shortcut
+	 * @param k the end index of shortcut
+	 * @return true if the shortest path from j to k does not touch the rest of the path
+	 */
+	private boolean available(Shortcuts shortcuts, int j, int k) {
+		ShortCutKey key = shortcuts.key(j, k);
+		ShortCutResult r = cache.get(key);
+		if (r != null) {
+			hits.increment();
+			r.lastUse = clock.incrementAndGet();
+			return r.available;
+		}
+		misses.increment();
+		boolean available = shortcuts.available(j, k);
+		store(key, new ShortCutResult(available, null));
+		return available;
+	}
+	
+	/**
+	 * Cache a shortcut and keep the cache bounded
+	 * @param key the key of the shortcut
+	 * @param result the shortcut
+	 */
+	private void store(ShortCutKey key, ShortCutResult result) {
+		result.lastUse = clock.incrementAndGet();
+		cache.put(key, result);
+		if (cache.size() > cacheSize)
+			evict();
+	}
+	
+	/**
+	 * Compute the forbidden area of a shortcut from the areas of the kept prefix and suffix
+	 * @param path a path
+	 * @param j the start index of shortcut
+	 * @param k the end index of shortcut
+	 * @return forbidden area of the new path if shortcut is available, null otherwise
+	 */
+	BitSet shortcutArea(Path<Point> path, int j, int k) {
+		return shortcut(new Shortcuts(path, true), j, k);
+	}
+	
+	/**
+	 * Build the path of a shortcut
+	 * @param path a path
+	 * @param j the start index of shortcut
+	 * @param k the end index of shortcut
+	 * @return the path with the subpath from j to k replaced by a shortest path
+	 */
+	Path<Point> shortcutPath(Path<Point> path, int j, int k) {
+		return new Shortcuts(path, false).path(j, k);
+	}
+	
+	/**
+	 * Shrink the cache to nine tenths of its capacity by dropping the least recently used
+	 * shortcuts. Entries used during the eviction may be kept or dropped, and one thread
+	 * evicts at a time while the others go on, so the order and the bound are approximate.
+	 */
+	private void evict() {
+		if (!evicting.compareAndSet(false, true))
+			return;
+		try {
+			long[] stamps = cache.values().stream().mapToLong(r -> r.lastUse).sorted().toArray();
+			int excess = stamps.length - cacheSize / 10 * 9;
+			if (excess <= 0)
+				return;
+			long cutoff = stamps[excess - 1];
+			cache.values().removeIf(r -> r.lastUse <= cutoff);
+		} finally {
+			evicting.set(false);
+		}
+	}
+	
+	/**
+	 * Set the capacity of the shortcut cache
+	 * @param entries the largest number of cached shortcuts
+	 */
+	public void setCacheSize(int entries) {
+		if (entries < 10) {
+			logger.severe("Not a valid cache size");
+			throw new IllegalArgumentException("Not a valid cache size");
+		}
+		cacheSize = entries;
+		if (cache.size() > cacheSize)
+			evict();
+	}
+	
+	/**
+	 * Return the number of cached shortcuts
+	 * @return the number of entries
+	 */
+	int cachedShortcuts() {
+		return cache.size();
+	}
+	
+	/**
+	 * Test whether a shortcut of a path is cached
+	 * @param path a path
+	 * @param j the start index of shortcut
+	 * @param k the end index of shortcut
+	 * @return true if the shortcut is cached, false otherwise
+	 */
+	boolean isCached(Path<Point> path, int j, int k) {
+		return cache.containsKey(new Shortcuts(path, false).key(j, k));
 	}
 	
 	/**
-	 * Key for the cache
+	 * Discard the cached shortcuts, which follow shortest paths of the graph and are not
+	 * valid after the graph changes
+	 */
+	public void clearCache() {
+		cache.clear();
+	}
+	
+	/**
+	 * Return the fraction of shortcut lookups answered by the cache
+	 * @return the hit rate
+	 */
+	public double getCacheHitRate() {
+		long total = hits.sum() + misses.sum();
+		return total == 0 ? 0.0 : (double) hits.sum() / total;
+	}
+	
+	/**
+	 * Shortcuts of a path. The forbidden area of the path with the subpath from j to k
+	 * replaced by a shortest path is the union of the area of the prefix before j, the
+	 * area of the shortest path, and the area of the suffix after k, so only the area of
+	 * the shortest path is computed for each shortcut. The areas of prefixes and suffixes
+	 * are built only for models evaluating areas. A new path is built only on request.
 	 * @author yuhanlyu
 	 *
 	 */
-	private static final class ShortCutKey {
-		public Path<Point> path;
-		public int j;
-		public int k;
+	private final class Shortcuts {
+		private final Path<Point> path;
+		private final BitSet[] prefix;                  // prefix[j]: area of vertices before j, or null
+		private final BitSet[] suffix;                  // suffix[k]: area of vertices from k on, or null
+		private final Map<Point, Integer> firstIndex = new HashMap<>();
+		private final Map<Point, Integer> lastIndex = new HashMap<>();
+		private final int[] vertices;                   // indices in the failure group
+		private final long[] prefixHash;                // prefixHash[j]: hash of vertices before j
+		private final long[] suffixHash;                // suffixHash[k]: hash of vertices from k on
 		
 		/**
 		 * Constructor
-		 * @param p path
-		 * @param arg_j begin index
-		 * @param arg_k end index
+		 * @param p a path
+		 * @param areas whether the areas of prefixes and suffixes are built
 		 */
-		public ShortCutKey(Path<Point> p, int arg_j, int arg_k) {
+		Shortcuts(Path<Point> p, boolean areas) {
 			path = p;
-			j = arg_j;
-			k = arg_k;
+			int size = path.size();
+			prefix = areas ? new BitSet[size + 1] : null;
+			suffix = areas ? new BitSet[size + 1] : null;
+			vertices = fr.fromPathToIndices(path);
+			prefixHash = new long[size + 1];
+			suffixHash = new long[size + 1];
+			for (int j = 0; j < size; ++j) {
+				prefixHash[j + 1] = prefixHash[j] * MIX + vertices[j] + 1;
+				firstIndex.putIfAbsent(path.get(j), j);
+				lastIndex.put(path.get(j), j);
+			}
+			for (int k = size - 1; k >= 0; --k)
+				suffixHash[k] = suffixHash[k + 1] * MIX + vertices[k] + 1;
+			if (!areas)
+				return;
+			prefix[0] = new BitSet();
+			for (int j = 0; j < size; ++j) {
+				prefix[j + 1] = (BitSet) prefix[j].clone();
+				fr.addForbiddenArea(prefix[j + 1], path.get(j));
+			}
+			suffix[size] = new BitSet();
+			for (int k = size - 1; k >= 0; --k) {
+				suffix[k] = (BitSet) suffix[k + 1].clone();
+				fr.addForbiddenArea(suffix[k], path.get(k));
+			}
+		}
+		
+		/**
+		 * Return the number of vertices of the path
+		 * @return the number of vertices
+		 */
+		int size() {
+			return path.size();
+		}
+		
+		/**
+		 * Create the cache key of a shortcut
+		 * @param j the start index of shortcut
+		 * @param k the end index of shortcut
+		 * @return the key
+		 */
+		ShortCutKey key(int j, int k) {
+			return new ShortCutKey(vertices[j], vertices[k], j, prefixHash[j], size() - k - 1, suffixHash[k + 1]);
+		}
+		
+		/**
+		 * Compute the forbidden area of a shortcut
+		 * @param j the start index of shortcut
+		 * @param k the end index of shortcut
+		 * @return forbidden area of the new path if shortcut is available, null otherwise
+		 */
+		BitSet area(int j, int k) {
+			Path<Point> subpath = g.pathQuery(path.get(j), path.get(k));
+			BitSet result = (BitSet) prefix[j].clone();
+			for (Point point : subpath) {
+				if (touches(point, j, k))
+					return null;
+				fr.addForbiddenArea(result, point);
+			}
+			result.or(suffix[k + 1]);
+			return result;
+		}
+		
+		/**
+		 * Test whether a shortcut is available
+		 * @param j the start index of shortcut
+		 * @param k the end index of shortcut
+		 * @return true if the shortest path does not touch the kept prefix or suffix
+		 */
+		boolean available(int j, int k) {
+			for (Point point : g.pathQuery(path.get(j), path.get(k)))
+				if (touches(point, j, k))
+					return false;
+			return true;
+		}
+		
+		/**
+		 * Test whether a vertex of a shortcut touches the kept prefix or suffix
+		 * @param point a vertex of the shortest path
+		 * @param j the start index of shortcut
+		 * @param k the end index of shortcut
+		 * @return true if the vertex is on the path before j or after k
+		 */
+		private boolean touches(Point point, int j, int k) {
+			Integer first = firstIndex.get(point), last = lastIndex.get(point);
+			return first != null && (first < j || last > k);
+		}
+		
+		/**
+		 * Build the path of a shortcut
+		 * @param j the start index of shortcut
+		 * @param k the end index of shortcut
+		 * @return the new path
+		 */
+		Path<Point> path(int j, int k) {
+			Path<Point> result = path.slice(0, j);
+			result.concate(g.pathQuery(path.get(j), path.get(k)));
+			result.concate(path.slice(k + 1, path.size()));
+			return result;
+		}
+	}
+	
+	/**
+	 * Key for the cache. A shortcut is determined by the vertices it connects and the
+	 * prefix and suffix it keeps, which are identified by their lengths and hashes.
+	 * @author yuhanlyu
+	 *
+	 */
+	private static final class ShortCutKey {
+		public int start;
+		public int end;
+		public int prefixLength;
+		public long prefixHash;
+		public int suffixLength;
+		public long suffixHash;
+		
+		/**
+		 * Constructor
+		 * @param s index of the start vertex
+		 * @param e index of the end vertex
+		 * @param pl length of the prefix
+		 * @param ph hash of the prefix
+		 * @param sl length of the suffix
+		 * @param sh hash of the suffix
+		 */
+		public ShortCutKey(int s, int e, int pl, long ph, int sl, long sh) {
+			start = s;
+			end = e;
+			prefixLength = pl;
+			prefixHash = ph;
+			suffixLength = sl;
+			suffixHash = sh;
 		}
 		
 		@Override
 		public boolean equals(Object obj) {
 			ShortCutKey rhs = (ShortCutKey) obj;
-			return j == rhs.j && k == rhs.k && path == rhs.path;
+			return start == rhs.start && end == rhs.end && prefixLength == rhs.prefixLength && prefixHash == rhs.prefixHash
+					&& suffixLength == rhs.suffixLength && suffixHash == rhs.suffixHash;
 		}
 		
 		@Override
 		public int hashCode() {
-			return path.hashCode() ^ (j << 16) ^ k;
+			long result = ((prefixHash * MIX + suffixHash) * MIX + start) * MIX + end;
+			return (int) (result ^ (result >>> 32));
 		}
 	}
 	
@@ -293,20 +732,86 @@ public class PathImprovement {
 	 *
 	 */
 	private static final class ShortCutResult {
-		public Path<Point> path;
+		public boolean available;
 		public BitSet area;
+		public volatile long lastUse;          // stamp of the last use, for eviction
 		
 		/**
 		 * Constructor
-		 * @param p a path
-		 * @param a bitset
+		 * @param av whether the shortcut is available
+		 * @param a bitset, null if the shortcut is not available or its area is not computed
 		 */
-		public ShortCutResult(Path<Point> p, BitSet a) {
-			path = p;
+		public ShortCutResult(boolean av, BitSet a) {
+			available = av;
 			area = a;
 		}
 	}
 	
+	/**
+	 * The best solution found by any chain
+	 * @author yuhanlyu
+	 *
+	 */
+	private static final class Incumbent {
+		private List<Path<Point>> solution;
+		private double value;
+		private int exchanges = 0;
+		
+		/**
+		 * Constructor
+		 * @param initial initial solution
+		 * @param initialValue arrivability of the initial solution
+		 */
+		public Incumbent(List<Path<Point>> initial, double initialValue) {
+			solution = new ArrayList<>(initial);
+			value = initialValue;
+		}
+		
+		/**
+		 * Replace the best solution if the candidate is better
+		 * @param candidate a solution
+		 * @param candidateValue arrivability of the candidate
+		 */
+		public synchronized void offer(List<Path<Point>> candidate, double candidateValue) {
+			if (candidateValue > value) {
+				logger.info("Improved");
+				solution = new ArrayList<>(candidate);
+				value = candidateValue;
+			}
+		}
+		
+		/**
+		 * Record that a chain restarted from the best solution
+		 */
+		public synchronized void exchanged() {
+			++exchanges;
+		}
+		
+		/**
+		 * Return a copy of the best solution
+		 * @return a copy of the best solution
+		 */
+		public synchronized List<Path<Point>> getSolution() {
+			return new ArrayList<>(solution);
+		}
+		
+		/**
+		 * Return the arrivability of the best solution
+		 * @return the arrivability
+		 */
+		public synchronized double getValue() {
+			return value;
+		}
+		
+		/**
+		 * Return the number of restarts from the best solution
+		 * @return the number of exchanges
+		 */
+		public synchronized int getExchanges() {
+			return exchanges;
+		}
+	}
+	
 	/**
 	 * A class for holding result
 	 * @author yuhanlyu
@@ -315,18 +820,42 @@ public class PathImprovement {
 	private static final class Result {
 		public double sum;
 		public int removeIndex;
-		public Path<Point> newPath;
+		public Shortcuts shortcuts;
+		public int j = -1;
+		public int k = -1;
 		
 		/**
 		 * Constructor
 		 * @param s objective value
 		 * @param ri remove index
-		 * @param np new path
+		 * @param sc shortcuts of the path to be replaced
 		 */
-		public Result(double s, int ri, Path<Point> np) {
+		public Result(double s, int ri, Shortcuts sc) {
 			sum = s;
 			removeIndex = ri;
-			newPath = np;
+			shortcuts = sc;
+		}
+		
+		/**
+		 * Keep a shortcut if it is better
+		 * @param s objective value
+		 * @param arg_j the start index of shortcut
+		 * @param arg_k the end index of shortcut
+		 */
+		public void offer(double s, int arg_j, int arg_k) {
+			if (s > sum) {
+				sum = s;
+				j = arg_j;
+				k = arg_k;
+			}
+		}
+		
+		/**
+		 * Build the new path
+		 * @return the new path
+		 */
+		public Path<Point> newPath() {
+			return shortcuts.path(j, k);
 		}
 	}
 }
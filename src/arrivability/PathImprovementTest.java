@@ -0,0 +1,148 @@
+package arrivability;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+public class PathImprovementTest {
+
+	@Test
+	public void testShortcutAreas() {
+		GridGraph g = new GridGraph(7, 7);
+		FixedRadius fr = new FixedRadius(new GridFailureGroup(7, 7, 1), g, 0.05);
+		PathImprovement pi = new PathImprovement(g, fr);
+		Path<Point> path = snake(7);
+		int available = 0, unavailable = 0;
+		for (int j = 0; j < path.size(); ++j)
+			for (int k = j + 2; k < path.size(); ++k) {
+				BitSet area = pi.shortcutArea(path, j, k);
+				Path<Point> spliced = pi.shortcutPath(path, j, k);
+				if (area == null) {
+					// the shortest path touches the kept prefix or suffix
+					assertTrue(new HashSet<>(spliced.toCollection()).size() < spliced.size());
+					++unavailable;
+					continue;
+				}
+				assertEquals(fr.forbiddenArea(fr.fromPathToIndices(spliced)), area);
+				++available;
+			}
+		assertTrue(available > 0 && unavailable > 0);
+	}
+	
+	@Test
+	public void testCache() {
+		GridGraph g = new GridGraph(7, 7);
+		FixedRadius fr = new FixedRadius(new GridFailureGroup(7, 7, 1), g, 0.05);
+		PathImprovement pi = new PathImprovement(g, fr);
+		pi.setCacheSize(100);
+		Path<Point> path = snake(7);
+		int lookups = 0;
+		for (int j = 0; j < path.size(); ++j)
+			for (int k = j + 2; k < path.size(); ++k) {
+				pi.shortcutArea(path, j, k);
+				// a shortcut used all the time is never the least recently used one
+				pi.shortcutArea(path, 0, 2);
+				++lookups;
+				assertTrue(pi.cachedShortcuts() <= 100);
+			}
+		assertTrue(lookups > 200);
+		assertTrue(pi.isCached(path, 0, 2));
+		assertFalse(pi.isCached(path, 0, 3));
+		assertTrue(pi.isCached(path, path.size() - 3, path.size() - 1));
+		
+		// a shortcut around the U follows the row until its middle vertex is blocked
+		Path<Point> u = new Path<>();
+		for (Point point : new Point[]{new Point(0, 0), new Point(1, 0), new Point(2, 0), new Point(2, 1),
+				new Point(2, 2), new Point(1, 2), new Point(0, 2)})
+			u.addVertex(point);
+		Point middle = new Point(0, 1);
+		BitSet before = pi.shortcutArea(u, 0, 6);
+		assertTrue(pi.shortcutPath(u, 0, 6).contains(middle));
+		g.removeVertex(middle);
+		g.reset();
+		assertEquals(before, pi.shortcutArea(u, 0, 6));
+		pi.clearCache();
+		assertEquals(0, pi.cachedShortcuts());
+		Path<Point> spliced = pi.shortcutPath(u, 0, 6);
+		assertFalse(spliced.contains(middle));
+		assertEquals(fr.forbiddenArea(fr.fromPathToIndices(spliced)), pi.shortcutArea(u, 0, 6));
+	}
+	
+	@Test
+	public void testPortfolio() {
+		GridGraph g = new GridGraph(7, 7);
+		FixedRadius fr = new FixedRadius(new GridFailureGroup(7, 7, 1), g, 0.05);
+		fr.setEvaluator(FailureRate.EXACT);
+		PathImprovement pi = new PathImprovement(g, fr);
+		PathGeneration pg = new PathGeneration(g, PathGeneration.RANDOM);
+		pi.shareDistances();
+		List<Path<Point>> initial = new ArrayList<>();
+		// the two sides of the grid, far from a shortest path through the middle
+		Path<Point> top = new Path<>(), bottom = new Path<>();
+		for (int i = 0; i < 7; ++i) {
+			top.addVertex(new Point(0, i));
+			bottom.addVertex(new Point(i, 0));
+		}
+		for (int i = 1; i < 7; ++i) {
+			top.addVertex(new Point(i, 6));
+			bottom.addVertex(new Point(6, i));
+		}
+		initial.add(top);
+		initial.add(bottom);
+		double start = fr.evaluate(initial, 1);
+		
+		pi.setSeed(5);
+		List<Path<Point>> single = pi.improve(new ArrayList<>(initial), pg, 1, 5, 1, Deadline.none());
+		pi.setSeed(5);
+		assertEquals(vertices(single), vertices(pi.improve(new ArrayList<>(initial), pg, 1, 5, 1, Deadline.none())));
+		// without exchanges the first chain repeats the single chain of the same seed
+		pi.setSeed(5);
+		List<Path<Point>> portfolio = pi.improve(new ArrayList<>(initial), pg, 1, 5, 4, Deadline.none());
+		assertTrue(fr.evaluate(single, 1) >= start);
+		assertTrue(fr.evaluate(portfolio, 1) >= fr.evaluate(single, 1));
+		
+		// with exchanges the portfolio still keeps the best solution of all chains
+		pi.setSeed(5);
+		List<Path<Point>> exchanged = pi.improve(new ArrayList<>(initial), pg, 1, 25, 3, Deadline.none());
+		assertTrue(fr.evaluate(exchanged, 1) >= start);
+		for (Path<Point> path : exchanged) {
+			assertEquals(new Point(0, 0), path.get(0));
+			assertEquals(new Point(6, 6), path.get(path.size() - 1));
+		}
+	}
+	
+	/**
+	 * List the vertices of the paths of a solution, since paths compare by identity
+	 * @param solution a solution
+	 * @return the vertex sequences of its paths
+	 */
+	private static List<List<Point>> vertices(List<Path<Point>> solution) {
+		List<List<Point>> result = new ArrayList<>();
+		for (Path<Point> path : solution)
+			result.add(new ArrayList<>(path.toCollection()));
+		return result;
+	}
+	
+	/**
+	 * Create a path sweeping the rows 0, 2 and 4 of a square grid back and forth
+	 * @param size the number of rows and columns
+	 * @return the path
+	 */
+	static Path<Point> snake(int size) {
+		Path<Point> path = new Path<>();
+		for (int row = 0; row <= 4; ++row) {
+			if (row % 2 == 1) {
+				path.addVertex(new Point(row, row % 4 == 1 ? size - 1 : 0));
+				continue;
+			}
+			for (int i = 0; i < size; ++i)
+				path.addVertex(new Point(row, row % 4 == 0 ? i : size - 1 - i));
+		}
+		return path;
+	}
+}
@@ -1,21 +1,24 @@
 package arrivability;
 
-import java.math.BigInteger;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
 import java.util.Random;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
+import java.util.function.IntToDoubleFunction;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 /**
@@ -32,21 +35,38 @@ public class PathSelection {
 	public static final int MAX_NEAREST = 4;
 	public static final int MAX_SURVIVABILITY = 5;
 	public static final int FIRST_K = 6;
-	public static final int NUMBER_OF_MODE = 7;
+	public static final int GREEDY = 7;
+	public static final int TABU = 8;
+	public static final int NUMBER_OF_MODE = 9;
 	
-	public static final String names[] = {"Optimal", "Random", "Remote clique", "Remote edge", "Remote pseudoforest", "Survivability", "First n"};
+	public static final int BEST_IMPROVEMENT = 0;
+	public static final int FIRST_IMPROVEMENT = 1;
+	public static final String improvementNames[] = {"Best improvement", "First improvement"};
+	
+	public static final String names[] = {"Optimal", "Random", "Remote clique", "Remote edge", "Remote pseudoforest", "Survivability", "First n", "Greedy", "Tabu"};
 	
 	private static final Logger logger = Logger.getLogger(PathSelection.class.getName());
-	private static final int CACHE_SIZE = 100000;
+	private static final int TASKS_PER_CORE = 8;     // leaves per core, to balance uneven objective costs
+	private static final int MATRIX_LIMIT = 4096;    // the most candidates with a precomputed distance matrix
+	private static final long FIELD_LIMIT = 1L << 26;  // the most entries of distance fields of all candidates
+	private static final int TABU_TENURE = 7;        // iterations a removed candidate cannot be added back
+	private static final int TABU_PATIENCE = 50;     // iterations without a new best solution before stopping
+	private static final int MAX_STEPS = 10000;      // swaps of one local improvement, which may have no deadline
+	private static final int STREAM_PATIENCE = 100;  // arrivals without improving the incumbent before a stream is abandoned
+	private static final long POLL_INTERVAL = 10;    // milliseconds between checks whether a stream has ended
 	private Graph<Point> g;
 	private FailureRate fr;
 	private int mode;
-	private Map<Path<Point>, Map<Path<Point>, Double>> distanceMap = Collections.synchronizedMap(new LinkedHashMap<Path<Point>, Map<Path<Point>, Double>>() {
-		@Override
-		protected boolean removeEldestEntry(Map.Entry oldest) {
-			return size() > CACHE_SIZE;  
-		}  
-	});
+	private CandidateTable table;
+	private boolean exact;                     // whether solutions are evaluated exactly from bitsets
+	private Frechet frechet;
+	private float[] distances;                 // packed Frechet distances between candidates, or null
+	private int[][] fields;                    // graph distance from each candidate by failure group index, or null
+	private int improvement = BEST_IMPROVEMENT;
+	private long timeBudget = 1000000000L;           // nanoseconds per selection in the tabu mode
+	private Deadline stop = Deadline.none();         // deadline of the current selection
+	private final LongAdder busyTime = new LongAdder();     // nanoseconds spent in swap tasks
+	private final LongAdder wallTime = new LongAdder();     // nanoseconds spent in swap searches
 	
 	/**
 	 * Constructor
@@ -57,6 +77,7 @@ public class PathSelection {
 		g = arg_g;
 		fr = arg_fr;
 		mode = arg_mode;
+		frechet = new Frechet(g);
 	}
 
 	/**
@@ -66,192 +87,830 @@ public class PathSelection {
 	 * @return a list of paths
 	 */
 	public List<Path<Point>> select(List<Path<Point>> candidates, int numberOfRobots, int numberOfRequest) {
+		return select(candidates, numberOfRobots, numberOfRequest, Deadline.none());
+	}
+	
+	/**
+	 * Select a subset with a given size maximizing arrivability before a deadline.
+	 * Every search stops at the deadline and keeps the best selection found so far.
+	 * @param candidates all candidates
+	 * @param numberOfRobots number of robots
+	 * @param numberOfRequest number of requested robots
+	 * @param deadline wall-clock deadline
+	 * @return a list of paths
+	 */
+	public List<Path<Point>> select(List<Path<Point>> candidates, int numberOfRobots, int numberOfRequest, Deadline deadline) {
+		return select(new CandidateTable(fr, candidates), numberOfRobots, numberOfRequest, deadline);
+	}
+	
+	/**
+	 * Select a subset with a given size from a candidate table before a deadline, so that
+	 * the forbidden areas of the candidates are not computed again. The table is not modified.
+	 * @param candidates a table of all candidates
+	 * @param numberOfRobots number of robots
+	 * @param numberOfRequest number of requested robots
+	 * @param deadline wall-clock deadline
+	 * @return a list of paths
+	 */
+	public List<Path<Point>> select(CandidateTable candidates, int numberOfRobots, int numberOfRequest, Deadline deadline) {
 		long startTime = System.nanoTime();
-		List<Path<Point>> sols = initialSolution(candidates, numberOfRobots, numberOfRequest);
+		prepare(candidates, numberOfRobots, numberOfRequest, deadline);
+		Deadline tabuDeadline = new Deadline(Math.min(timeBudget, deadline.remaining()));
+		int[] sols = initialSolution(numberOfRobots, numberOfRequest);
 		long initialTime = System.nanoTime();
 		logger.info("Initial solution takes " + (initialTime - startTime) / 1000000 + " milliseconds");
-		distanceMap = Collections.synchronizedMap(new LinkedHashMap<Path<Point>, Map<Path<Point>, Double>>() {
-			@Override
-			protected boolean removeEldestEntry(Map.Entry oldest) {
-				return size() > CACHE_SIZE;  
-			}  
-		});
-		logger.info("Arrivability before path selection "+fr.arrivability(sols, numberOfRequest));
-		List<Path<Point>> result = localImprovement(sols, candidates, numberOfRequest);
+		logger.info("Arrivability before path selection "+arrivability(sols, numberOfRequest));
+		int[] result = mode == TABU ? tabuSearch(sols, numberOfRequest, tabuDeadline) : localImprovement(sols, numberOfRequest);
 		long improveTime = System.nanoTime();
 		logger.info("Local improvementn takes " + (improveTime - initialTime) / 1000000 + " milliseconds");
-		logger.info("Arrivability after local improvement "+fr.arrivability(result, numberOfRequest));
-		return result;
+		logger.info("Arrivability after local improvement "+arrivability(result, numberOfRequest));
+		logger.info("Swap search keeps " + Math.round(100 * getUtilization()) + "% of " + Runtime.getRuntime().availableProcessors() + " cores busy");
+		return table.paths(result);
+	}
+	
+	/**
+	 * Prepare the distances of the mode and the evaluator of arrivability for a selection
+	 * from a candidate table
+	 * @param candidates a table of all candidates
+	 * @param numberOfRobots number of robots
+	 * @param numberOfRequest number of requested robots
+	 * @param deadline wall-clock deadline
+	 */
+	void prepare(CandidateTable candidates, int numberOfRobots, int numberOfRequest, Deadline deadline) {
+		stop = deadline;
+		table = candidates;
+		// beyond the limit, distances are computed on demand with early abandoning
+		fields = mode == MAX_SURVIVABILITY ? distanceFields() : null;
+		distances = (mode == MAX_SUM || mode == MAX_MIN || mode == MAX_NEAREST) && table.size() <= MATRIX_LIMIT ? distanceMatrix() : null;
+		busyTime.reset();
+		wallTime.reset();
+		// the cost of an exact evaluation depends on the number of paths and the size of
+		// their union, which is about the same for all selections of the candidates
+		exact = fr instanceof FixedRadius && fr.preferExact(table.paths(firstK(numberOfRobots)), numberOfRequest);
+	}
+	
+	/**
+	 * Compute the objective maximized by the mode from scratch: a diversity measure for the
+	 * modes based on maximum diversity, and arrivability otherwise
+	 * @param solution indices of candidates
+	 * @param numberOfRequest number of requested robots
+	 * @return the objective value
+	 */
+	double objective(int[] solution, int numberOfRequest) {
+		switch (mode) {
+			case MAX_SUM:
+				return sumDistance(solution);
+			case MAX_MIN:
+				return minDistance(solution);
+			case MAX_NEAREST:
+				return sumNeighborDistance(solution);
+			case MAX_SURVIVABILITY:
+				return survivability(solution);
+		}
+		return arrivability(solution, numberOfRequest);
+	}
+	
+	/**
+	 * Create the incremental objective of the mode for swaps from a solution
+	 * @param solution indices of candidates
+	 * @param numberOfRequest number of requested robots
+	 * @return objective value of a swap
+	 */
+	SwapObjective objectiveOfSwaps(int[] solution, int numberOfRequest) {
+		switch (mode) {
+			case MAX_SUM:
+				return sumDistanceSwap(solution);
+			case MAX_MIN:
+				return minDistanceSwap(solution);
+			case MAX_NEAREST:
+				return sumNeighborDistanceSwap(solution);
+			case MAX_SURVIVABILITY:
+				return survivabilitySwap(solution);
+		}
+		return swapObjective(solution, numberOfRequest);
+	}
+	
+	/**
+	 * Improve a selection from a candidate table by swaps before a deadline, starting from
+	 * given candidates instead of an initial solution of the mode. The table is not modified.
+	 * @param candidates a table of all candidates
+	 * @param start indices of the selected candidates, one per robot
+	 * @param numberOfRequest number of requested robots
+	 * @param deadline wall-clock deadline
+	 * @return a list of paths
+	 */
+	public List<Path<Point>> resume(CandidateTable candidates, int[] start, int numberOfRequest, Deadline deadline) {
+		long startTime = System.nanoTime();
+		stop = deadline;
+		table = candidates;
+		fields = null;
+		distances = null;
+		busyTime.reset();
+		wallTime.reset();
+		exact = fr instanceof FixedRadius && fr.preferExact(table.paths(start), numberOfRequest);
+		int[] result = localImprovement(start.clone(), numberOfRequest);
+		logger.info("Local improvement from a previous selection takes " + (System.nanoTime() - startTime) / 1000000 + " milliseconds");
+		logger.info("Arrivability after local improvement " + arrivability(result, numberOfRequest));
+		return table.paths(result);
+	}
+	
+	/**
+	 * Select a subset with a given size from candidates arriving in a queue. The first arrivals
+	 * form the incumbent, and each later arrival replaces the slot where it improves arrivability
+	 * the most, if any. Swaps of the incumbent are scored by the same objective as in local
+	 * improvement, which is rebuilt only when the incumbent changes. Consumption stops once
+	 * STREAM_PATIENCE arrivals in a row do not improve the incumbent or the stream ends, and the
+	 * incumbent is then improved over all arrived candidates. The mode is not used, since its
+	 * initial solution needs all candidates.
+	 * @param stream the queue of candidates
+	 * @param producer the task producing candidates, done when no more candidates will arrive
+	 * @param numberOfRobots number of robots
+	 * @param numberOfRequest number of requested robots
+	 * @return a list of paths
+	 */
+	public List<Path<Point>> select(BlockingQueue<Path<Point>> stream, Future<?> producer, int numberOfRobots, int numberOfRequest) {
+		long startTime = System.nanoTime();
+		stop = Deadline.none();
+		table = new CandidateTable(fr, Collections.emptyList());
+		fields = null;
+		distances = null;
+		busyTime.reset();
+		wallTime.reset();
+		int[] current = new int[numberOfRobots];
+		double currentValue = 0.0;
+		SwapObjective objective = null;
+		int stale = 0, improvements = 0;
+		try {
+			for (Path<Point> path; stale < STREAM_PATIENCE && (path = next(stream, producer)) != null; ) {
+				int candidate = table.add(path).getId();
+				if (candidate < numberOfRobots) {
+					current[candidate] = candidate;
+					if (candidate == numberOfRobots - 1) {
+						exact = fr instanceof FixedRadius && fr.preferExact(table.paths(current), numberOfRequest);
+						currentValue = arrivability(current, numberOfRequest);
+					}
+					continue;
+				}
+				if (objective == null)
+					objective = swapObjective(current, numberOfRequest);
+				int bestSlot = -1;
+				double best = currentValue + MaximizeArrivability.EPSILON;
+				for (int slot = 0; slot < numberOfRobots; ++slot) {
+					double value = objective.score(slot, candidate);
+					if (value > best) {
+						best = value;
+						bestSlot = slot;
+					}
+				}
+				if (bestSlot < 0) {
+					++stale;
+					continue;
+				}
+				current[bestSlot] = candidate;
+				currentValue = best;
+				objective = null;
+				stale = 0;
+				++improvements;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			logger.warning("Streaming selection interrupted");
+		}
+		if (table.size() == 0) {
+			logger.severe("No candidate path");
+			throw new IllegalArgumentException("No candidate path");
+		}
+		if (table.size() < numberOfRobots) {
+			// fewer candidates than robots, reuse the arrived ones
+			for (int slot = table.size(); slot < numberOfRobots; ++slot)
+				current[slot] = current[slot - table.size()];
+			exact = fr instanceof FixedRadius && fr.preferExact(table.paths(current), numberOfRequest);
+		}
+		long streamTime = System.nanoTime();
+		logger.info("Streaming selection takes " + (streamTime - startTime) / 1000000 + " milliseconds for " + table.size() 
+				+ " candidates with " + improvements + " improvements");
+		int[] result = localImprovement(current, numberOfRequest);
+		logger.info("Local improvementn takes " + (System.nanoTime() - streamTime) / 1000000 + " milliseconds");
+		logger.info("Arrivability after local improvement " + arrivability(result, numberOfRequest));
+		return table.paths(result);
+	}
+	
+	/**
+	 * Wait for the next candidate of a stream
+	 * @param stream the queue of candidates
+	 * @param producer the task producing candidates
+	 * @return the next candidate, or null if the stream has ended
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	private static Path<Point> next(BlockingQueue<Path<Point>> stream, Future<?> producer) throws InterruptedException {
+		while (true) {
+			Path<Point> path = stream.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+			// a producer puts its last candidate before it is done
+			if (path != null || producer.isDone() && stream.isEmpty())
+				return path;
+		}
 	}
 	
 	/**
 	 * Find a good initial solution
-	 * @param candidates all candidates
 	 * @param numberOfRobots number of robots
 	 * @return an initial solution
 	 */
-	private List<Path<Point>> initialSolution(List<Path<Point>> candidates, int numberOfRobots, int numberOfRequest) {
+	private int[] initialSolution(int numberOfRobots, int numberOfRequest) {
 		switch (mode) {
 			case MAX_SUM: 
-				return maxObj(candidates, numberOfRobots, this::sumDistance);
+				return maxObj(numberOfRobots, this::sumDistance, this::sumDistanceSwap);
 			case MAX_MIN:
-				return maxObj(candidates, numberOfRobots, this::minDistance);
+				return maxObj(numberOfRobots, this::minDistance, this::minDistanceSwap);
 			case MAX_NEAREST:
-				return maxObj(candidates, numberOfRobots, this::sumNeighborDistance);
+				return maxObj(numberOfRobots, this::sumNeighborDistance, this::sumNeighborDistanceSwap);
 			case MAX_SURVIVABILITY:
-				return maxObj(candidates, numberOfRobots, this::survivability);
+				return maxObj(numberOfRobots, this::survivability, this::survivabilitySwap);
 			case FIRST_K:
-				return firstK(candidates, numberOfRobots);
+				return firstK(numberOfRobots);
 			case OPTIMAL:
-				return optObj(candidates, numberOfRobots, solution -> {
-					return fr.arrivability(solution, numberOfRequest);
-				});
+				return branchAndBound(numberOfRobots, numberOfRequest);
 			case RANDOM:
-				return ranObj(candidates, numberOfRobots);
+				return ranObj(numberOfRobots);
+			case GREEDY:
+			case TABU:
+				return greedy(numberOfRobots);
 		}
 		return null;
 	}
 	
+	/**
+	 * Compute the arrivability of a selection
+	 * @param solution indices of candidates
+	 * @param numberOfRequest number of requested robots
+	 * @return the arrivability
+	 */
+	private double arrivability(int[] solution, int numberOfRequest) {
+		if (exact)
+			return ((FixedRadius) fr).arrivabilityFromBitSets(table.areas(solution), numberOfRequest);
+		return fr.evaluate(table.paths(solution), numberOfRequest);
+	}
+	
 	/**
 	 * Find a good initial solution based on maximum diversity problem
-	 * @param candidates all candidates
 	 * @param numberOfRobots number of robots
 	 * @param objective objective function
+	 * @param swaps objective function of swaps from a solution
 	 * @return an initial solution
 	 */
-	private List<Path<Point>> maxObj(List<Path<Point>> candidates, int numberOfRobots, 
-			Function<List<Path<Point>>, Double> objective) {
+	private int[] maxObj(int numberOfRobots, Function<int[], Double> objective, Function<int[], SwapObjective> swaps) {
 
-		List<Path<Point>> initial = randomK(candidates, numberOfRobots);
+		int[] initial = randomK(numberOfRobots);
 		
-		while (increase(initial, candidates, objective)) {
+		while (!stop.expired() && increase(initial, objective, swaps)) {
 			;
 		}
 		return initial;
 	}
 	
 	/**
-	 * Find the optimal solution
-	 * @param candidates all candidates
+	 * Find the optimal solution by branch and bound. Candidates are sorted by their own
+	 * arrivability and a selection is extended in that order. A partial selection is pruned
+	 * when an upper bound of its completions is not above the incumbent, which starts from
+	 * the greedy solution. The subtrees of the first choice are searched in parallel.
+	 * If the deadline passes, the incumbent is returned.
 	 * @param numberOfRobots number of robots
-	 * @param objective objective function
-	 * @return an initial solution
+	 * @param numberOfRequest number of requested robots
+	 * @return an optimal solution
 	 */
-	private List<Path<Point>> optObj(List<Path<Point>> candidates, int numberOfRobots, 
-			Function<List<Path<Point>>, Double> objective) {
-
-		BigInteger comb = new BigInteger("1");
-		comb = comb.shiftLeft(numberOfRobots);
-		comb = comb.subtract(new BigInteger("1"));
-		BigInteger goal = new BigInteger("1");
-		goal = goal.shiftLeft(candidates.size());
-		double max = Double.NEGATIVE_INFINITY;
-		List<Path<Point>> result = null;
-		while (comb.compareTo(goal) < 0) {
-			List<Path<Point>> temp = new ArrayList<>();
-			for (int i = 0; i < comb.bitLength(); ++i) {
-				if (comb.testBit(i)) {
-					temp.add(candidates.get(i));
+	private int[] branchAndBound(int numberOfRobots, int numberOfRequest) {
+		int[] start = greedy(numberOfRobots);
+		if (table.size() < numberOfRobots || stop.expired())
+			return start;
+		BranchAndBound search = new BranchAndBound(numberOfRobots, numberOfRequest, start);
+		search.branch(new int[0], 0.0, 0.0, true);
+		double subsets = 1.0;
+		for (int i = 0; i < numberOfRobots; ++i)
+			subsets = subsets * (table.size() - i) / (i + 1);
+		logger.info("Branch and bound takes " + search.evaluations.sum() + " evaluations for " + (long) subsets + " subsets");
+		return search.best;
+	}
+	
+	/**
+	 * The state of a branch and bound search. Two upper bounds of the arrivability of the
+	 * completions of a partial selection S with r more paths are used:
+	 * 1-arrivability is submodular and not smaller than k-arrivability, so it is at most
+	 * f(S) plus the r largest marginal gains with respect to S; and by Markov's inequality,
+	 * k-arrivability is at most the expected number of surviving paths divided by k.
+	 * @author yuhanlyu
+	 *
+	 */
+	private final class BranchAndBound {
+		private final int size;
+		private final int request;
+		private final int[] order;               // candidates by decreasing arrivability
+		private final double[] singles;          // arrivability of candidates in order
+		private final double[] prefix;           // prefix sums of singles
+		private final LongAdder evaluations = new LongAdder();
+		private volatile double incumbent;
+		private int[] best;
+		
+		/**
+		 * Constructor
+		 * @param size number of robots
+		 * @param request number of requested robots
+		 * @param start an initial solution
+		 */
+		BranchAndBound(int size, int request, int[] start) {
+			this.size = size;
+			this.request = request;
+			IntToDoubleFunction single = marginalGain(new int[0], 0.0);
+			double[] values = IntStream.range(0, table.size()).parallel().mapToDouble(single).toArray();
+			evaluations.add(values.length);
+			order = IntStream.range(0, table.size()).boxed()
+					.sorted((a, b) -> Double.compare(values[b], values[a])).mapToInt(Integer::intValue).toArray();
+			singles = new double[order.length];
+			prefix = new double[order.length + 1];
+			for (int p = 0; p < order.length; ++p) {
+				singles[p] = values[order[p]];
+				prefix[p + 1] = prefix[p] + singles[p];
+			}
+			best = start;
+			incumbent = arrivability(start, request);
+		}
+		
+		/**
+		 * Extend a partial selection by one more candidate
+		 * @param positions positions in order of selected candidates, increasing
+		 * @param value 1-arrivability of the selection
+		 * @param weight the sum of arrivability of selected candidates
+		 * @param parallel whether children are searched in parallel
+		 */
+		void branch(int[] positions, double value, double weight, boolean parallel) {
+			int m = order.length, remain = size - positions.length;
+			int from = positions.length == 0 ? 0 : positions[positions.length - 1] + 1, to = m - remain;
+			IntToDoubleFunction marginal = marginalGain(toCandidates(positions), value);
+			double[] gains = new double[m - from];
+			for (int p = from; p < m; ++p)
+				gains[p - from] = marginal.applyAsDouble(order[p]);
+			evaluations.add(m - from);
+			// the remain - 1 largest gains after each position
+			double[] rest = new double[to - from + 1];
+			PriorityQueue<Double> largest = new PriorityQueue<>();
+			double sum = 0.0;
+			for (int p = m - 1; p >= from; --p) {
+				if (p <= to)
+					rest[p - from] = sum;
+				largest.add(gains[p - from]);
+				sum += gains[p - from];
+				if (largest.size() > remain - 1)
+					sum -= largest.poll();
+			}
+			IntStream children = IntStream.rangeClosed(from, to);
+			(parallel ? children.parallel() : children).forEach(p -> {
+				if (stop.expired())
+					return;
+				double childValue = value + gains[p - from], childWeight = weight + singles[p];
+				double bound = Math.min(1.0, Math.min(childValue + rest[p - from], 
+						(childWeight + prefix[p + remain] - prefix[p + 1]) / request));
+				if (bound <= incumbent + MaximizeArrivability.EPSILON)
+					return;
+				int[] child = Arrays.copyOf(positions, positions.length + 1);
+				child[positions.length] = p;
+				if (remain > 1) {
+					branch(child, childValue, childWeight, false);
+					return;
 				}
+				int[] solution = toCandidates(child);
+				double objective = request == 1 ? childValue : arrivability(solution, request);
+				evaluations.add(request == 1 ? 0 : 1);
+				offer(solution, objective);
+			});
+		}
+		
+		/**
+		 * Replace the incumbent if a solution is better
+		 * @param solution indices of candidates
+		 * @param objective arrivability of the solution
+		 */
+		private synchronized void offer(int[] solution, double objective) {
+			if (objective > incumbent) {
+				incumbent = objective;
+				best = solution;
 			}
-			double obj = objective.apply(temp);
-			if (obj > max) {
-				max = obj;
-				result = temp;
+		}
+		
+		/**
+		 * Convert positions in order to indices of candidates
+		 * @param positions positions in order
+		 * @return indices of candidates
+		 */
+		private int[] toCandidates(int[] positions) {
+			int[] result = new int[positions.length];
+			for (int i = 0; i < positions.length; ++i)
+				result[i] = order[positions[i]];
+			return result;
+		}
+	}
+	
+	/**
+	 * Find a good initial solution by greedily maximizing 1-arrivability, which is submodular.
+	 * Marginal gains only shrink as the selection grows, so a stale gain is an upper bound
+	 * and a candidate is re-evaluated only when its stale gain is the largest (CELF).
+	 * @param numberOfRobots number of robots
+	 * @return an initial solution
+	 */
+	private int[] greedy(int numberOfRobots) {
+		int[] result = new int[numberOfRobots];
+		PriorityQueue<Gain> queue = new PriorityQueue<>();
+		for (int j = 0; j < table.size(); ++j)
+			queue.add(new Gain(Double.POSITIVE_INFINITY, j, -1));
+		long evaluations = 0, plainEvaluations = 0;
+		double value = 0.0;
+		for (int round = 0; round < numberOfRobots; ++round) {
+			if (queue.isEmpty()) {
+				// fewer candidates than robots, reuse the selected ones
+				result[round] = result[round - table.size()];
+				continue;
 			}
-			BigInteger x = comb.and(comb.negate());
-			BigInteger y = comb.add(x);
-			comb = comb.xor(y);
-			while (x.compareTo(new BigInteger("1")) > 0) {
-				comb = comb.shiftRight(1);
-				x = x.shiftRight(1);
+			if (stop.expired()) {
+				// out of time, take the largest stale gains without building the marginal gain
+				result[round] = queue.poll().candidate;
+				continue;
+			}
+			plainEvaluations += queue.size();
+			IntToDoubleFunction marginal = marginalGain(Arrays.copyOf(result, round), value);
+			while (true) {
+				Gain top = queue.poll();
+				if (top.round == round) {
+					result[round] = top.candidate;
+					value += top.bound;
+					break;
+				}
+				if (stop.expired()) {
+					// out of time, take the largest stale gain, and later rounds need no value
+					result[round] = top.candidate;
+					break;
+				}
+				top.bound = marginal.applyAsDouble(top.candidate);
+				top.round = round;
+				++evaluations;
+				queue.add(top);
 			}
-			comb = comb.shiftRight(2);
-			comb = comb.or(y);
 		}
+		logger.info("Greedy takes " + evaluations + " evaluations, saves " + (plainEvaluations - evaluations) + " evaluations of plain greedy");
 		return result;
 	}
 	
+	/**
+	 * Create the marginal gain of 1-arrivability of adding a candidate to a selection
+	 * @param selected indices of selected candidates
+	 * @param value 1-arrivability of the selection
+	 * @return marginal gain of a candidate
+	 */
+	private IntToDoubleFunction marginalGain(int[] selected, double value) {
+		if (exact) {
+			FixedRadius fr = (FixedRadius) (this.fr);
+			AreaPowerSet powerSet = new AreaPowerSet(table.areas(selected), fr.fg.vertexSet().size());
+			return candidate -> fr.arrivabilityFromBitSuperSets(powerSet, value, table.get(candidate).words(), 1) - value;
+		}
+		return candidate -> {
+			int[] solution = Arrays.copyOf(selected, selected.length + 1);
+			solution[selected.length] = candidate;
+			return arrivability(solution, 1) - value;
+		};
+	}
+	
+	/**
+	 * Marginal gain of a candidate, evaluated in a given round
+	 * @author yuhanlyu
+	 *
+	 */
+	private static final class Gain implements Comparable<Gain> {
+		public double bound;
+		public int candidate;
+		public int round;
+		
+		/**
+		 * Constructor
+		 * @param b upper bound of marginal gain
+		 * @param c index of candidate
+		 * @param r round in which the bound is evaluated
+		 */
+		public Gain(double b, int c, int r) {
+			bound = b;
+			candidate = c;
+			round = r;
+		}
+		
+		@Override
+		public int compareTo(Gain other) {
+			int result = Double.compare(other.bound, bound);
+			return result != 0 ? result : Integer.compare(candidate, other.candidate);
+		}
+	}
+	
 	/**
 	 * Try to increase the objective function
 	 * @param initial an initial solution
-	 * @param candidates all candidates
 	 * @param objective objective function
+	 * @param swaps objective function of swaps from a solution
 	 * @return true if improved, false otherwise
 	 */
-	private static boolean increase(List<Path<Point>> initial, List<Path<Point>> candidates, 
-			Function<List<Path<Point>>, Double> objective) {
-		Result result = IntStream.range(0, initial.size()).parallel().mapToObj(i -> {
-			List<Path<Point>> solution = Path.clonePaths(initial);
-			double obj = 0.0;
-			int index = 0;
-			for (int j = 0; j < candidates.size(); ++j) {
-				solution.set(i, candidates.get(j));
-				double newSum = objective.apply(solution);
-				if (newSum > obj) {
-					obj = newSum;
-					index = j;
-				}
-			}
-			return new Result(obj, i, index);
-		}).collect(Collectors.maxBy((a, b) -> Double.compare(a.sum, b.sum))).get();
-		//System.out.println(result.sum + " " + objective.apply(initial));
-		if (result.sum > objective.apply(initial) + MaximizeArrivability.EPSILON) {
-			//System.out.println(result.removeIndex + " " + result.newIndex);
-			List<Path<Point>> solution = Path.clonePaths(initial);
-			solution.set(result.removeIndex, candidates.get(result.newIndex));
-			//System.out.println("Mid: " + result.sum + " " + objective.apply(solution));
-			//initial.set(result.removeIndex, candidates.get(result.newIndex));
-			for (int i = 0; i < solution.size(); ++i)
-				initial.set(i, solution.get(i));
+	private boolean increase(int[] initial, Function<int[], Double> objective, Function<int[], SwapObjective> swaps) {
+		double current = objective.apply(initial);
+		Result result = search(initial.length, current, swaps.apply(initial));
+		if (result.sum > current + MaximizeArrivability.EPSILON) {
+			initial[result.removeIndex] = result.newIndex;
 			assert(objective.apply(initial) > result.sum - MaximizeArrivability.EPSILON);
-			//System.out.println("After: " + result.sum + " " + objective.apply(initial));
 			return true;
 		}
 		return false;
 	}
 	
+	/**
+	 * Create an objective of swaps that evaluates every neighbor from scratch
+	 * @param initial a solution
+	 * @param objective objective function
+	 * @return objective value of a swap
+	 */
+	private static SwapObjective fullSwap(int[] initial, Function<int[], Double> objective) {
+		int[] solution = initial.clone();
+		return (slot, candidate) -> {
+			int[] neighbor = solution.clone();
+			neighbor[slot] = candidate;
+			return objective.apply(neighbor);
+		};
+	}
+	
 	/**
 	 * Improve arrivability
 	 * @param initial an initial solution
-	 * @param candidates candidate paths
 	 * @return an improved solution
 	 */
-	private List<Path<Point>> localImprovement(List<Path<Point>> initial, List<Path<Point>> candidates, int numberOfRequest) {
-		while (canImprove(initial, candidates, numberOfRequest)) {
-			;
+	private int[] localImprovement(int[] initial, int numberOfRequest) {
+		int steps = 0;
+		while (!stop.expired() && steps < MAX_STEPS && canImprove(initial, numberOfRequest)) {
+			++steps;
 		}
+		if (steps == MAX_STEPS)
+			logger.warning("Local improvement stops after " + MAX_STEPS + " swaps");
 		return initial;
 	}
 	
 	/**
 	 * Improve arrivability
 	 * @param initial an initial solution
-	 * @param candidates candidate paths
 	 * @return true if initial solution is improved, false otherwise
 	 */
-	private boolean canImprove(List<Path<Point>> initial, List<Path<Point>> candidates, int numberOfRequest) {
-		Result result = IntStream.range(0, initial.size()).parallel().mapToObj(i -> {
-			List<Path<Point>> solution = Path.clonePaths(initial);
-			double obj = 0.0;
-			int index = 0;
-			for (int j = 0; j < candidates.size(); ++j) {
-				solution.set(i, candidates.get(j));
-				double newSum = fr.arrivability(solution, numberOfRequest);
-				if (newSum > obj) {
-					obj = newSum;
-					index = j;
-				}
-			}
-			return new Result(obj, i, index);
-		}).collect(Collectors.maxBy((a, b) -> Double.compare(a.sum, b.sum))).get();
-		if (result.sum > fr.arrivability(initial, numberOfRequest) + MaximizeArrivability.EPSILON) {
-			initial.set(result.removeIndex, candidates.get(result.newIndex));
+	private boolean canImprove(int[] initial, int numberOfRequest) {
+		if (!exact && fr.usesPairedComparison() && !fr.preferExact(table.paths(initial), numberOfRequest))
+			return canImproveByComparison(initial, numberOfRequest);
+		double current = arrivability(initial, numberOfRequest);
+		Result result = search(initial.length, current, swapObjective(initial, numberOfRequest));
+		if (result.sum > current + MaximizeArrivability.EPSILON) {
+			initial[result.removeIndex] = result.newIndex;
 			return true;
 		}
 		return false;
 	}
 	
+	/**
+	 * Improve arrivability by the first swap that paired Monte Carlo trials decide to be
+	 * better, which takes far fewer trials than estimating every swap to a bounded half width.
+	 * All swaps of the solution share the error budget of the comparisons.
+	 * @param initial a solution estimated rather than evaluated exactly
+	 * @param numberOfRequest number of requested robots
+	 * @return true if initial solution is improved, false otherwise
+	 */
+	private boolean canImproveByComparison(int[] initial, int numberOfRequest) {
+		int[] solution = initial.clone();
+		List<Path<Point>> current = table.paths(solution);
+		int neighbors = solution.length * table.size();
+		Result result = search(solution.length, 0.0, (slot, candidate) -> {
+			if (candidate == solution[slot])
+				return 0.0;
+			int[] neighbor = solution.clone();
+			neighbor[slot] = candidate;
+			return fr.isBetter(table.paths(neighbor), current, numberOfRequest, neighbors) ? 1.0 : 0.0;
+		}, true);
+		if (result.sum > 0.0) {
+			initial[result.removeIndex] = result.newIndex;
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Create the arrivability of replacing one slot of a solution by one candidate
+	 * @param initial a solution
+	 * @param numberOfRequest number of requested robots
+	 * @return arrivability of a swap
+	 */
+	private SwapObjective swapObjective(int[] initial, int numberOfRequest) {
+		if (exact) {
+			// Only terms containing slot i change, so the power set of the other paths is built once per slot
+			FixedRadius fr = (FixedRadius) (this.fr);
+			AreaPowerSet[] powerSets = new AreaPowerSet[initial.length];
+			double[] othersArrivability = new double[initial.length];
+			IntStream.range(0, initial.length).parallel().forEach(i -> {
+				int[] others = new int[initial.length - 1];
+				for (int k = 0, count = 0; k < initial.length; ++k)
+					if (k != i)
+						others[count++] = initial[k];
+				powerSets[i] = new AreaPowerSet(table.areas(others), fr.fg.vertexSet().size());
+				othersArrivability[i] = fr.arrivabilityFromBitSuperSets(powerSets[i], numberOfRequest);
+			});
+			return (slot, candidate) -> 
+				fr.arrivabilityFromBitSuperSets(powerSets[slot], othersArrivability[slot], table.get(candidate).words(), numberOfRequest);
+		}
+		int[] solution = initial.clone();
+		return (slot, candidate) -> {
+			int[] neighbor = solution.clone();
+			neighbor[slot] = candidate;
+			return arrivability(neighbor, numberOfRequest);
+		};
+	}
+	
+	/**
+	 * Tabu search from an initial solution until the deadline passes or the best solution
+	 * stops improving. Each iteration takes the best swap whose added candidate is not tabu,
+	 * even if it is worse; a removed candidate is tabu for a number of iterations, unless
+	 * adding it back gives a new best solution (aspiration).
+	 * @param initial an initial solution
+	 * @param numberOfRequest number of requested robots
+	 * @param deadline wall-clock deadline
+	 * @return the best solution found
+	 */
+	private int[] tabuSearch(int[] initial, int numberOfRequest, Deadline deadline) {
+		int[] current = initial.clone(), best = initial.clone();
+		double currentValue = arrivability(current, numberOfRequest), bestValue = currentValue;
+		int tenure = Math.max(1, Math.min(TABU_TENURE, table.size() - initial.length - 1));
+		int[] tabuUntil = new int[table.size()];
+		int iteration = 0, bestIteration = 0;
+		while (!deadline.expired() && iteration - bestIteration < TABU_PATIENCE) {
+			++iteration;
+			SwapObjective objective = swapObjective(current, numberOfRequest);
+			int[] solution = current.clone();
+			double aspiration = bestValue + MaximizeArrivability.EPSILON;
+			int now = iteration;
+			Result move = search(current.length, currentValue, (slot, candidate) -> {
+				if (candidate == solution[slot] || deadline.expired())
+					return Double.NEGATIVE_INFINITY;
+				double value = objective.score(slot, candidate);
+				return tabuUntil[candidate] >= now && value <= aspiration ? Double.NEGATIVE_INFINITY : value;
+			});
+			if (move.sum == Double.NEGATIVE_INFINITY)
+				break;
+			tabuUntil[current[move.removeIndex]] = iteration + tenure;
+			current[move.removeIndex] = move.newIndex;
+			currentValue = move.sum;
+			if (currentValue > bestValue) {
+				bestValue = currentValue;
+				best = current.clone();
+				bestIteration = iteration;
+			}
+		}
+		logger.info("Tabu search takes " + iteration + " iterations, best solution found at iteration " + bestIteration);
+		return best;
+	}
+	
+	/**
+	 * Set the wall-clock budget of a selection in the tabu mode
+	 * @param nanoseconds the budget
+	 */
+	public void setTimeBudget(long nanoseconds) {
+		if (nanoseconds <= 0) {
+			logger.severe("Not a valid time budget");
+			throw new IllegalArgumentException("Not a valid time budget");
+		}
+		timeBudget = nanoseconds;
+	}
+	
+	/**
+	 * Search the neighborhood of replacing one slot by one candidate. The slot by candidate
+	 * space is split into balanced tasks, each of which keeps its own best swap.
+	 * @param numberOfSlots the number of slots
+	 * @param current objective value of the current solution
+	 * @param objective objective value of a swap
+	 * @return the best swap, or the first improving swap found under first improvement
+	 */
+	private Result search(int numberOfSlots, double current, SwapObjective objective) {
+		return search(numberOfSlots, current, objective, improvement == FIRST_IMPROVEMENT);
+	}
+	
+	/**
+	 * Search the neighborhood of replacing one slot by one candidate
+	 * @param numberOfSlots the number of slots
+	 * @param current objective value of the current solution
+	 * @param objective objective value of a swap
+	 * @param first whether the search stops at the first improving swap
+	 * @return the best swap, or the first improving swap found under first improvement
+	 */
+	private Result search(int numberOfSlots, double current, SwapObjective objective, boolean first) {
+		long startTime = System.nanoTime();
+		int size = numberOfSlots * table.size();
+		int grain = Math.max(1, size / (Runtime.getRuntime().availableProcessors() * TASKS_PER_CORE));
+		AtomicBoolean found = first ? new AtomicBoolean() : null;
+		Result result = ForkJoinPool.commonPool().invoke(new SwapTask(objective, table.size(), 0, size, grain, 
+				current + MaximizeArrivability.EPSILON, found));
+		wallTime.add(System.nanoTime() - startTime);
+		return result;
+	}
+	
+	/**
+	 * Report the utilization of cores by the swap search since the last selection started.
+	 * The thread invoking the search helps run tasks of the common pool, so all cores count.
+	 * @return busy time of all tasks over wall time of all cores
+	 */
+	public double getUtilization() {
+		long wall = wallTime.sum();
+		if (wall == 0)
+			return 0.0;
+		return (double) busyTime.sum() / wall / Runtime.getRuntime().availableProcessors();
+	}
+	
+	/**
+	 * Set the improvement policy of local search
+	 * @param policy BEST_IMPROVEMENT or FIRST_IMPROVEMENT
+	 */
+	public void setImprovement(int policy) {
+		if (policy != BEST_IMPROVEMENT && policy != FIRST_IMPROVEMENT) {
+			logger.severe("Unknown improvement policy " + policy);
+			throw new IllegalArgumentException("Unknown improvement policy " + policy);
+		}
+		improvement = policy;
+	}
+	
+	/**
+	 * Objective value after replacing a slot by a candidate
+	 */
+	@FunctionalInterface
+	interface SwapObjective {
+		double score(int slot, int candidate);
+	}
+	
+	/**
+	 * A task scanning a range of the slot by candidate space
+	 * @author yuhanlyu
+	 *
+	 */
+	private final class SwapTask extends RecursiveTask<Result> {
+		private static final long serialVersionUID = 1L;
+		private final SwapObjective objective;
+		private final int numberOfCandidates;
+		private final int low, high, grain;          // range of slot * numberOfCandidates + candidate
+		private final double threshold;              // a swap above threshold is an improvement
+		private final AtomicBoolean found;           // null under best improvement
+		
+		/**
+		 * Constructor
+		 * @param objective objective value of a swap
+		 * @param numberOfCandidates the number of candidates
+		 * @param low first index of the range
+		 * @param high last index of the range, exclusive
+		 * @param grain the largest range scanned without splitting
+		 * @param threshold objective value an improving swap must exceed
+		 * @param found set when an improving swap is found, or null
+		 */
+		SwapTask(SwapObjective objective, int numberOfCandidates, int low, int high, int grain, double threshold, AtomicBoolean found) {
+			this.objective = objective;
+			this.numberOfCandidates = numberOfCandidates;
+			this.low = low;
+			this.high = high;
+			this.grain = grain;
+			this.threshold = threshold;
+			this.found = found;
+		}
+		
+		@Override
+		protected Result compute() {
+			if (high - low > grain) {
+				int middle = (low + high) >>> 1;
+				SwapTask left = new SwapTask(objective, numberOfCandidates, low, middle, grain, threshold, found);
+				SwapTask right = new SwapTask(objective, numberOfCandidates, middle, high, grain, threshold, found);
+				right.fork();
+				Result first = left.compute(), second = right.join();
+				// ties go to the lower index, so best improvement does not depend on scheduling
+				return second.sum > first.sum ? second : first;
+			}
+			long startTime = System.nanoTime();
+			Result best = new Result(Double.NEGATIVE_INFINITY, -1, -1);
+			for (int index = low; index < high; ++index) {
+				if (found != null && found.get() || stop.expired())
+					break;
+				int slot = index / numberOfCandidates, candidate = index % numberOfCandidates;
+				double value = objective.score(slot, candidate);
+				if (value > best.sum) {
+					best.sum = value;
+					best.removeIndex = slot;
+					best.newIndex = candidate;
+				}
+				if (found != null && value > threshold) {
+					found.set(true);
+					break;
+				}
+			}
+			busyTime.add(System.nanoTime() - startTime);
+			return best;
+		}
+	}
+	
 	/**
 	 * A class for holding result
 	 * @author yuhanlyu
@@ -277,16 +936,16 @@ public class PathSelection {
 	
 	/**
 	 * Compute the sum of distance to nearest neighbors
-	 * @param paths solution
+	 * @param solution indices of candidates
 	 * @return the sum of distance to nearest neighbors
 	 */
-	private double sumNeighborDistance(List<Path<Point>> paths) {
+	private double sumNeighborDistance(int[] solution) {
 		double sum = 0.0;
-		for (int i = 0; i < paths.size(); ++i) {
+		for (int i = 0; i < solution.length; ++i) {
 			double min = Double.POSITIVE_INFINITY;
-			for (int j = 0; j < paths.size(); ++j) {
+			for (int j = 0; j < solution.length; ++j) {
 				if (i == j) continue;
-				double distance = distance(paths.get(i), paths.get(j));
+				double distance = distance(solution[i], solution[j]);
 				if (distance < min)
 					min = distance;
 			}
@@ -297,14 +956,14 @@ public class PathSelection {
 	
 	/**
 	 * Compute the sum of distance
-	 * @param paths a list of paths
+	 * @param solution indices of candidates
 	 * @return the sum of distance
 	 */
-	private double minDistance(List<Path<Point>> paths) {
+	private double minDistance(int[] solution) {
 		double min = Double.POSITIVE_INFINITY;
-		for (int i = 0; i < paths.size(); ++i)
-			for (int j = i + 1; j < paths.size(); ++j) {
-				double distance = distance(paths.get(i), paths.get(j));
+		for (int i = 0; i < solution.length; ++i)
+			for (int j = i + 1; j < solution.length; ++j) {
+				double distance = distance(solution[i], solution[j]);
 				if (distance < min)
 					min = distance;
 			}
@@ -313,74 +972,224 @@ public class PathSelection {
 	
 	/**
 	 * Compute the sum of distance
-	 * @param paths a list of paths
+	 * @param solution indices of candidates
 	 * @return the sum of distance
 	 */
-	private double sumDistance(List<Path<Point>> paths) {
+	private double sumDistance(int[] solution) {
 		double sum = 0.0;
-		for (Path<Point> path1 : paths) {
-			for (Path<Point> path2 : paths)
-				sum += distance(path1, path2);
+		for (int id1 : solution) {
+			for (int id2 : solution)
+				sum += distance(id1, id2);
 		}
 		return sum;
 	}
 	
 	/**
-	 * Compute the distance between two paths
-	 * @param path1 first path
-	 * @param path2 second path
+	 * Incremental sum of distance: replacing x by y in slot a changes the sum by
+	 * twice the difference between the distances of y and x to the other slots
+	 * @param initial a solution
+	 * @return the sum of distance after a swap
+	 */
+	private SwapObjective sumDistanceSwap(int[] initial) {
+		int[] solution = initial.clone();
+		double total = sumDistance(solution);
+		double[] row = new double[solution.length];
+		for (int a = 0; a < solution.length; ++a)
+			row[a] = distanceToOthers(solution, a, solution[a]);
+		return (slot, candidate) -> total + 2 * (distanceToOthers(solution, slot, candidate) - row[slot]);
+	}
+	
+	/**
+	 * Incremental minimum distance: the minimum over pairs without slot a is kept per slot.
+	 * A swap bringing the candidate within the current minimum of a path cannot improve,
+	 * so its value is only bounded; the value of an improving swap is exact.
+	 * @param initial a solution
+	 * @return the minimum distance after a swap
+	 */
+	private SwapObjective minDistanceSwap(int[] initial) {
+		int[] solution = initial.clone();
+		double[] without = new double[solution.length];
+		Arrays.fill(without, Double.POSITIVE_INFINITY);
+		for (int i = 0; i < solution.length; ++i)
+			for (int j = i + 1; j < solution.length; ++j) {
+				double distance = distance(solution[i], solution[j]);
+				for (int a = 0; a < solution.length; ++a)
+					if (a != i && a != j && distance < without[a])
+						without[a] = distance;
+			}
+		double current = minDistance(solution);
+		return (slot, candidate) -> {
+			double min = without[slot];
+			for (int j = 0; j < solution.length; ++j) {
+				if (j == slot)
+					continue;
+				if (min <= current || atMost(candidate, solution[j], current))
+					return Math.min(min, current);
+				min = Math.min(min, distance(candidate, solution[j], min));
+			}
+			return min;
+		};
+	}
+	
+	/**
+	 * Incremental sum of distance to nearest neighbors: the nearest neighbor of slot i
+	 * other than slot a is kept for each pair of slots
+	 * @param initial a solution
+	 * @return the sum of distance to nearest neighbors after a swap
+	 */
+	private SwapObjective sumNeighborDistanceSwap(int[] initial) {
+		int[] solution = initial.clone();
+		int n = solution.length;
+		double[][] nearest = new double[n][n];     // nearest[a][i]: nearest neighbor of i other than a
+		for (int a = 0; a < n; ++a)
+			for (int i = 0; i < n; ++i) {
+				double min = Double.POSITIVE_INFINITY;
+				for (int j = 0; j < n; ++j)
+					if (j != i && j != a)
+						min = Math.min(min, distance(solution[i], solution[j]));
+				nearest[a][i] = min;
+			}
+		return (slot, candidate) -> {
+			double sum = 0.0, own = Double.POSITIVE_INFINITY;
+			for (int i = 0; i < n; ++i) {
+				if (i == slot)
+					continue;
+				// a distance above both the nearest neighbors so far does not matter
+				double distance = distance(candidate, solution[i], Math.max(own, nearest[slot][i]));
+				own = Math.min(own, distance);
+				sum += Math.min(nearest[slot][i], distance);
+			}
+			return sum + own;
+		};
+	}
+	
+	/**
+	 * Compute the sum of distance from a candidate to all slots but one
+	 * @param solution indices of candidates
+	 * @param slot the excluded slot
+	 * @param candidate index of a candidate
+	 * @return the sum of distance
+	 */
+	private double distanceToOthers(int[] solution, int slot, int candidate) {
+		double sum = 0.0;
+		for (int j = 0; j < solution.length; ++j)
+			if (j != slot)
+				sum += distance(candidate, solution[j]);
+		return sum;
+	}
+	
+	/**
+	 * Compute the distance between two candidates
+	 * @param id1 index of first candidate
+	 * @param id2 index of second candidate
 	 * @return the distance
 	 */
-	private double distance(Path<Point> path1, Path<Point> path2) {
-		if (distanceMap.containsKey(path1) && distanceMap.get(path1).containsKey(path2)) {
-			return distanceMap.get(path1).get(path2);
-		}
-		int m1 = path1.size(), m2 = path2.size();
-		double[][] fre = new double[m1 + 1][m2 + 1];
-		for (int i = 1; i <= m2; i++) 
-			fre[0][i] = Double.POSITIVE_INFINITY;
-    	for (int i = 1; i <= m1; i++) 
-    		fre[i][0] = Double.POSITIVE_INFINITY;
-    	
-    	int i = 1;
-    	for (Point p1 : path1) {
-    		int j = 1;
-    		for (Point p2 : path2) {
-    			fre[i][j] = Math.max(g.distanceQuery(p1, p2), 
-    					Math.min(Math.min(fre[i][j-1], fre[i-1][j]), fre[i-1][j-1]));
-    			++j;
-    		}
-    		++i;
-    	}
-    	if (!distanceMap.containsKey(path1)) {
-    		distanceMap.put(path1, new ConcurrentHashMap<>());
-    	}
-    	if (!distanceMap.containsKey(path2)) {
-    		distanceMap.put(path2, new ConcurrentHashMap<>());
-    	}
-    	distanceMap.get(path1).put(path2, fre[m1][m2]);
-    	distanceMap.get(path2).put(path1, fre[m1][m2]);
-    	return fre[m1][m2];
+	private double distance(int id1, int id2) {
+		return distance(id1, id2, Double.POSITIVE_INFINITY);
+	}
+	
+	/**
+	 * Compute the distance between two candidates if it is within a threshold
+	 * @param id1 index of first candidate
+	 * @param id2 index of second candidate
+	 * @param threshold the threshold
+	 * @return the distance if it is at most threshold, a larger value otherwise
+	 */
+	private double distance(int id1, int id2, double threshold) {
+		if (id1 == id2)
+			return 0.0;
+		if (distances == null)
+			return frechet.distance(table.get(id1).getPath(), table.get(id2).getPath(), threshold);
+		int low = Math.min(id1, id2), high = Math.max(id1, id2);
+		float distance = distances[(int) ((long) high * (high - 1) / 2) + low];
+		// a pair left out by a deadline is computed on demand
+		return Float.isNaN(distance) ? frechet.distance(table.get(id1).getPath(), table.get(id2).getPath(), threshold) : distance;
+	}
+	
+	/**
+	 * Decide whether the distance between two candidates is at most a threshold
+	 * @param id1 index of first candidate
+	 * @param id2 index of second candidate
+	 * @param delta the threshold
+	 * @return true if the distance is at most delta, false otherwise
+	 */
+	private boolean atMost(int id1, int id2, double delta) {
+		if (id1 == id2 || distances != null)
+			return distance(id1, id2) <= delta;
+		return frechet.atMost(table.get(id1).getPath(), table.get(id2).getPath(), delta);
+	}
+	
+	/**
+	 * Compute the distance between all pairs of candidates into a packed lower triangular
+	 * matrix, where the pair (i, j) with i < j is at j * (j - 1) / 2 + i. Rows are filled in parallel.
+	 * Pairs not filled before the deadline are NaN.
+	 * @return the packed matrix
+	 */
+	private float[] distanceMatrix() {
+		long startTime = System.nanoTime();
+		int m = table.size();
+		long size = (long) m * (m - 1) / 2;
+		if (size > Integer.MAX_VALUE - 8) {
+			logger.severe("Too many candidates for a distance matrix");
+			throw new IllegalArgumentException("Too many candidates for a distance matrix");
+		}
+		float[] result = new float[(int) size];
+		Arrays.fill(result, Float.NaN);
+		// pair long rows with short rows so that tasks have similar sizes
+		IntStream.range(0, (m + 1) / 2).parallel().forEach(k -> {
+			fillRow(result, k);
+			if (m - 1 - k != k)
+				fillRow(result, m - 1 - k);
+		});
+		logger.info("Distance matrix of " + m + " candidates takes " + (System.nanoTime() - startTime) / 1000000 + " milliseconds");
+		return result;
+	}
+	
+	/**
+	 * Fill a row of the packed distance matrix
+	 * @param matrix the packed matrix
+	 * @param j the row
+	 */
+	private void fillRow(float[] matrix, int j) {
+		int base = (int) ((long) j * (j - 1) / 2);
+		Path<Point> path = table.get(j).getPath();
+		for (int i = 0; i < j && !stop.expired(); ++i)
+			matrix[base + i] = (float) frechet.distance(table.get(i).getPath(), path);
 	}
 	
 	/**
 	 * Compute survivability of a set of paths
-	 * @param paths
+	 * @param solution indices of candidates
 	 * @return survivability
 	 */
-	private double survivability(List<Path<Point>> paths) {
+	private double survivability(int[] solution) {
+		if (fields != null) {
+			double sum = 0.0;
+			for (int id1 : solution)
+				for (int id2 : solution)
+					if (id2 != id1)
+						sum += meanDistance(id1, id2);
+			return sum / (solution.length - 1) / solution.length;
+		}
+		return survivabilityFromQueries(solution);
+	}
+	
+	/**
+	 * Compute survivability of a set of paths by distance queries of the graph
+	 * @param solution indices of candidates
+	 * @return survivability
+	 */
+	double survivabilityFromQueries(int[] solution) {
 		double sum = 0.0;
-		List<Path<Point>> otherpaths = new ArrayList<>(paths.size() - 1);
-		for (Path<Point> path1 : paths) {
-			otherpaths.clear();
-			for (Path<Point> path : paths)
-				if (path != path1)
-					otherpaths.add(path);
+		for (int id1 : solution) {
+			Path<Point> path1 = table.get(id1).getPath();
 			double sum2 = 0.0;
-			for (Path<Point> path2: otherpaths)  {
+			for (int id2 : solution)  {
+				if (id2 == id1)
+					continue;
 				for (Point point1: path1) {
 					double min3 = Double.POSITIVE_INFINITY;
-					for (Point point2: path2) {
+					for (Point point2: table.get(id2).getPath()) {
 						double u = g.distanceQuery(point1, point2);
 						if (u < min3) 
 							min3 = u;
@@ -388,9 +1197,108 @@ public class PathSelection {
 					sum2 += min3 / path1.size();
 				}
 			}
-			sum += sum2 / (paths.size() - 1);
+			sum += sum2 / (solution.length - 1);
+		}
+		return sum / solution.length;
+	}
+	
+	/**
+	 * Incremental survivability: replacing x by y in slot a only changes the terms
+	 * between slot a and the other slots
+	 * @param initial a solution
+	 * @return survivability after a swap
+	 */
+	private SwapObjective survivabilitySwap(int[] initial) {
+		if (fields == null)
+			return fullSwap(initial, this::survivability);
+		int[] solution = initial.clone();
+		int n = solution.length;
+		double[] row = new double[n];
+		double total = 0.0;
+		for (int a = 0; a < n; ++a) {
+			row[a] = pairTerms(solution, a, solution[a]);
+			total += row[a];
+		}
+		double sum = total / 2;
+		return (slot, candidate) -> (sum - row[slot] + pairTerms(solution, slot, candidate)) / (n - 1) / n;
+	}
+	
+	/**
+	 * Compute the terms of survivability between a candidate in a slot and the other slots
+	 * @param solution indices of candidates
+	 * @param slot the slot
+	 * @param candidate index of the candidate in the slot
+	 * @return the sum of mean distances in both directions
+	 */
+	private double pairTerms(int[] solution, int slot, int candidate) {
+		double sum = 0.0;
+		for (int j = 0; j < solution.length; ++j)
+			if (j != slot && solution[j] != candidate)
+				sum += meanDistance(candidate, solution[j]) + meanDistance(solution[j], candidate);
+		return sum;
+	}
+	
+	/**
+	 * Compute the mean distance from the points of a candidate to another candidate
+	 * @param id1 index of the first candidate
+	 * @param id2 index of the second candidate
+	 * @return the mean distance
+	 */
+	private double meanDistance(int id1, int id2) {
+		int[] vertices = table.get(id1).vertices(), field = fields[id2];
+		double sum = 0.0;
+		for (int vertex : vertices)
+			sum += field[vertex] == Integer.MAX_VALUE ? Double.POSITIVE_INFINITY : field[vertex];
+		return sum / vertices.length;
+	}
+	
+	/**
+	 * Compute the distance field in the graph from every candidate in parallel, indexed
+	 * by the failure group. Candidates not reached before the deadline are left out.
+	 * @return distance fields, or null if they do not fit in memory or the deadline passes
+	 */
+	private int[][] distanceFields() {
+		long startTime = System.nanoTime();
+		int size = fr.indexMap.size();
+		if ((long) table.size() * size > FIELD_LIMIT) {
+			logger.info("Distance fields of " + table.size() + " candidates do not fit, use distance queries");
+			return null;
+		}
+		int[][] adjacency = new int[size][];
+		for (Point point : fr.indexMap.keySet()) {
+			int index = fr.indexMap.get(point);
+			adjacency[index] = g.contains(point) ? g.getNeighbors(point).stream().mapToInt(fr.indexMap::get).toArray() : new int[0];
+		}
+		int[][] result = new int[table.size()][];
+		IntStream.range(0, table.size()).parallel().forEach(id -> {
+			if (stop.expired())
+				return;
+			int[] distance = new int[size], queue = new int[size];
+			Arrays.fill(distance, Integer.MAX_VALUE);
+			int head = 0, tail = 0;
+			for (int vertex : table.get(id).vertices()) {
+				if (distance[vertex] != 0) {
+					distance[vertex] = 0;
+					queue[tail++] = vertex;
+				}
+			}
+			while (head < tail) {
+				int node = queue[head++];
+				for (int neighbor : adjacency[node]) {
+					if (distance[neighbor] == Integer.MAX_VALUE) {
+						distance[neighbor] = distance[node] + 1;
+						queue[tail++] = neighbor;
+					}
+				}
+			}
+			result[id] = distance;
+		});
+		if (Arrays.stream(result).anyMatch(Objects::isNull)) {
+			logger.info("Distance fields stopped by the deadline, use distance queries");
+			return null;
 		}
-		return sum / paths.size();
+		logger.info("Distance fields of " + table.size() + " candidates take " + (System.nanoTime() - startTime) / 1000000 + " milliseconds");
+		return result;
 	}
 	
 	/**
@@ -425,55 +1333,47 @@ public class PathSelection {
 	
 	/**
 	 * Pick k random paths
-	 * @param candidates a set of paths
 	 * @param numberOfRoboots number of selected paths
-	 * @return a set of paths
+	 * @return indices of candidates
 	 */
-	private static List<Path<Point>> randomK(List<Path<Point>> candidates, int numberOfRobots) {
-		Path<Point>[] result = new Path[numberOfRobots];
+	private int[] randomK(int numberOfRobots) {
+		int[] result = new int[numberOfRobots];
 		Random random = new Random();
 		for (int count = 0; count < numberOfRobots; ++count) {
-			result[count] = candidates.get(random.nextInt(candidates.size()));
+			result[count] = random.nextInt(table.size());
 		}
-		return Arrays.asList(result);
+		return result;
 	}
 	
 	/**
 	 * Pick first K paths
-	 * @param candidates a set of paths
 	 * @param numberOfRoboots number of selected paths
-	 * @return a set of paths
+	 * @return indices of candidates
 	 */
-	private List<Path<Point>> firstK(List<Path<Point>> candidates, int numberOfRobots) {
-		Path<Point>[] result = new Path[numberOfRobots];
-		int count = 0;
-		for (Path<Point> path : candidates) {
-			result[count] = path;
-			++count;
-			if (count == numberOfRobots)
-				break;
-		}
-		return Arrays.asList(result);
+	private int[] firstK(int numberOfRobots) {
+		int[] result = new int[numberOfRobots];
+		for (int count = 0; count < numberOfRobots; ++count)
+			result[count] = count % table.size();
+		return result;
 	}
 	
 	/**
 	 * Pick random K paths
-	 * @param candidates a set of paths
 	 * @param numberOfRoboots number of selected paths
-	 * @return a set of paths
+	 * @return indices of candidates
 	 */
-	private List<Path<Point>> ranObj(List<Path<Point>> candidates, int numberOfRobots) {
-		Path<Point>[] result = new Path[numberOfRobots];
+	private int[] ranObj(int numberOfRobots) {
+		int[] result = new int[numberOfRobots];
 		Random rand = new Random();
 		int count = 0;
 		while (true) {
-			int randidx = rand.nextInt(candidates.size());
-			result[count] = candidates.get(randidx);
+			int randidx = rand.nextInt(table.size());
+			result[count] = randidx;
 			++count;
 			if (count == numberOfRobots)
 				break;
 		}
-		return Arrays.asList(result);
+		return result;
 	}
 	
 	/**
@@ -0,0 +1,180 @@
+package arrivability;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class PathSelectionTest {
+
+	@Test
+	public void testOptimal() {
+		FixedRadius fr = new FixedRadius(new GridFailureGroup(7, 7, 1), new GridGraph(7, 7), 0.05);
+		List<Path<Point>> candidates = candidates();
+		int n = 3;
+		for (int request = 1; request <= n; ++request) {
+			// the best of all selections of n candidates
+			double best = 0.0;
+			for (int mask = 1; mask < 1 << candidates.size(); ++mask) {
+				if (Integer.bitCount(mask) != n)
+					continue;
+				List<Path<Point>> subset = new ArrayList<>();
+				for (int i = 0; i < candidates.size(); ++i)
+					if ((mask >> i & 1) == 1)
+						subset.add(candidates.get(i));
+				best = Math.max(best, fr.arrivability(subset, request));
+			}
+			PathSelection ps = new PathSelection(new GridGraph(7, 7), fr, PathSelection.OPTIMAL);
+			List<Path<Point>> selected = ps.select(candidates, n, request);
+			assertEquals(n, selected.size());
+			// local improvement may put two robots on one path, which only helps when k > 1
+			if (request == 1)
+				assertEquals(best, fr.arrivability(selected, request), 1e-9);
+			else
+				assertTrue(fr.arrivability(selected, request) >= best - 1e-9);
+		}
+	}
+	
+	@Test
+	public void testSwapObjectives() {
+		GridGraph g = new GridGraph(7, 7);
+		List<FailureRate> models = Arrays.asList(new FixedRadius(new GridFailureGroup(7, 7, 1), g, 0.05),
+				new RandomRadius(new GridFailureGroup(7, 7, 1), g, 0.05, 2));
+		int[] modes = {PathSelection.GREEDY, PathSelection.MAX_SUM, PathSelection.MAX_MIN, PathSelection.MAX_NEAREST, PathSelection.MAX_SURVIVABILITY};
+		int[] solution = {0, 3, 5};
+		for (FailureRate model : models) {
+			CandidateTable table = new CandidateTable(model, candidates());
+			for (int mode : modes)
+				for (int request = 1; request <= solution.length; ++request) {
+					PathSelection ps = new PathSelection(g, model, mode);
+					ps.prepare(table, solution.length, request, Deadline.none());
+					double current = ps.objective(solution, request);
+					PathSelection.SwapObjective swaps = ps.objectiveOfSwaps(solution, request);
+					for (int slot = 0; slot < solution.length; ++slot)
+						for (int candidate = 0; candidate < table.size(); ++candidate) {
+							int[] neighbor = solution.clone();
+							neighbor[slot] = candidate;
+							double full = ps.objective(neighbor, request), delta = swaps.score(slot, candidate);
+							if (mode == PathSelection.MAX_MIN && full <= current) {
+								// a swap that cannot improve the minimum is only bounded
+								assertTrue(delta <= current + 1e-9);
+								continue;
+							}
+							assertEquals(full, delta, 1e-9);
+						}
+				}
+		}
+	}
+	
+	@Test
+	public void testSurvivability() {
+		GridGraph g = new GridGraph(7, 7);
+		FixedRadius fr = new FixedRadius(new GridFailureGroup(7, 7, 1), g, 0.05);
+		CandidateTable table = new CandidateTable(fr, candidates());
+		PathSelection fields = new PathSelection(g, fr, PathSelection.MAX_SURVIVABILITY);
+		fields.prepare(table, 3, 1, Deadline.none());
+		// fields are not computed after the deadline, and distance queries are used instead
+		PathSelection queries = new PathSelection(g, fr, PathSelection.MAX_SURVIVABILITY);
+		queries.prepare(table, 3, 1, new Deadline(0));
+		for (int a = 0; a < table.size(); ++a)
+			for (int b = a + 1; b < table.size(); ++b)
+				for (int c = b + 1; c < table.size(); ++c) {
+					int[] solution = {a, b, c};
+					double expected = fields.survivabilityFromQueries(solution);
+					assertEquals(expected, fields.objective(solution, 1), 1e-9);
+					assertEquals(expected, queries.objective(solution, 1), 1e-9);
+				}
+	}
+	
+	/**
+	 * Create rows and columns of different lengths on a 7x7 grid
+	 * @return eight paths
+	 */
+	@Test
+	public void testGreedyDeadline() {
+		GridGraph g = new GridGraph(7, 7);
+		FixedRadius fr = new FixedRadius(new GridFailureGroup(7, 7, 1), g, 0.05);
+		List<Path<Point>> candidates = candidates();
+		// after the deadline no gain is evaluated, and ties of unevaluated gains go to the first candidates
+		List<Path<Point>> selected = new PathSelection(g, fr, PathSelection.GREEDY).select(candidates, 3, 1, new Deadline(0));
+		assertEquals(3, selected.size());
+		for (int i = 0; i < selected.size(); ++i)
+			assertTrue(selected.get(i) == candidates.get(i));
+		// without a deadline the selection is at least as good as its best single candidate
+		selected = new PathSelection(g, fr, PathSelection.GREEDY).select(candidates, 3, 1, Deadline.none());
+		assertEquals(3, selected.size());
+		for (Path<Point> candidate : candidates)
+			assertTrue(fr.arrivability(selected, 1) >= fr.arrivability(Arrays.asList(candidate), 1) - 1e-9);
+	}
+	
+	@Test
+	public void testStreaming() throws Exception {
+		GridGraph g = new GridGraph(7, 7);
+		FixedRadius fr = new FixedRadius(new GridFailureGroup(7, 7, 1), g, 0.05);
+		List<Path<Point>> candidates = candidates();
+		
+		// a producer that finished before enough candidates arrived
+		BlockingQueue<Path<Point>> few = new LinkedBlockingQueue<>(candidates.subList(0, 2));
+		List<Path<Point>> reused = new PathSelection(g, fr, PathSelection.RANDOM).select(few, CompletableFuture.completedFuture(2), 3, 1);
+		assertEquals(3, reused.size());
+		for (Path<Point> path : reused)
+			assertTrue(path == candidates.get(0) || path == candidates.get(1));
+		assertTrue(few.isEmpty());
+		
+		// a producer that finished after putting all candidates
+		BlockingQueue<Path<Point>> all = new LinkedBlockingQueue<>(candidates);
+		List<Path<Point>> finished = new PathSelection(g, fr, PathSelection.RANDOM).select(all, CompletableFuture.completedFuture(candidates.size()), 3, 1);
+		assertEquals(3, finished.size());
+		assertTrue(fr.arrivability(finished, 1) >= fr.arrivability(candidates.subList(0, 3), 1) - 1e-9);
+		
+		// a producer that never finishes by itself, cancelled once its candidates are consumed
+		BlockingQueue<Path<Point>> stream = new ArrayBlockingQueue<>(1);
+		CountDownLatch produced = new CountDownLatch(1);
+		ExecutorService generator = Executors.newSingleThreadExecutor();
+		Future<?> producer = generator.submit(() -> {
+			for (Path<Point> path : candidates)
+				stream.put(path);
+			produced.countDown();
+			new CountDownLatch(1).await();
+			return null;
+		});
+		CompletableFuture<List<Path<Point>>> selection = CompletableFuture.supplyAsync(() -> 
+			new PathSelection(g, fr, PathSelection.RANDOM).select(stream, producer, 3, 1));
+		produced.await();
+		while (!stream.isEmpty())
+			Thread.sleep(1);
+		assertFalse(selection.isDone());
+		producer.cancel(true);
+		List<Path<Point>> cancelled = selection.get(10, TimeUnit.SECONDS);
+		generator.shutdown();
+		assertTrue(generator.awaitTermination(10, TimeUnit.SECONDS));
+		// the same candidates arrived in the same order as from the finished producer
+		assertEquals(fr.arrivability(finished, 1), fr.arrivability(cancelled, 1), 1e-12);
+	}
+	
+	private static List<Path<Point>> candidates() {
+		List<Path<Point>> candidates = new ArrayList<>();
+		for (int line = 0; line < 7; line += 2) {
+			Path<Point> row = new Path<>(), column = new Path<>();
+			for (int i = 0; i < 7 - line / 2; ++i) {
+				row.addVertex(new Point(line, i));
+				column.addVertex(new Point(i, 6 - line));
+			}
+			candidates.add(row);
+			candidates.add(column);
+		}
+		return candidates;
+	}
+}
@@ -0,0 +1,135 @@
+package arrivability;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of a planning run: the selected paths, their arrivability, and for each
+ * stage the time it took and whether it was stopped by the deadline
+ */
+public final class Plan {
+
+	public static final int GENERATION = 0;
+	public static final int SELECTION = 1;
+	public static final int IMPROVEMENT = 2;
+	public static final int NUMBER_OF_STAGES = 3;
+	public static final String names[] = {"Generation", "Selection", "Improvement"};
+
+	private final List<Path<Point>> solution;
+	private final double arrivability;
+	private final long[] times = new long[NUMBER_OF_STAGES];          // nanoseconds
+	private final boolean[] truncated = new boolean[NUMBER_OF_STAGES];
+	private final CandidateTable candidates;                          // the pool of the plan, null if unknown
+	private int invalidated = 0;                                      // candidates of the previous pool dropped by a replanning
+
+	/**
+	 * Constructor
+	 * @param solution the selected paths
+	 * @param arrivability arrivability of the solution
+	 */
+	public Plan(List<Path<Point>> solution, double arrivability) {
+		this(solution, arrivability, null);
+	}
+
+	/**
+	 * Constructor
+	 * @param solution the selected paths
+	 * @param arrivability arrivability of the solution
+	 * @param candidates the candidate pool with the forbidden areas, kept for replanning
+	 */
+	Plan(List<Path<Point>> solution, double arrivability, CandidateTable candidates) {
+		this.solution = Collections.unmodifiableList(new ArrayList<>(solution));
+		this.arrivability = arrivability;
+		this.candidates = candidates;
+	}
+
+	/**
+	 * Record the outcome of a stage
+	 * @param stage GENERATION, SELECTION or IMPROVEMENT
+	 * @param nanoseconds time of the stage
+	 * @param stopped whether the stage was stopped by the deadline
+	 */
+	void record(int stage, long nanoseconds, boolean stopped) {
+		times[stage] = nanoseconds;
+		truncated[stage] = stopped;
+	}
+
+	/**
+	 * Record the number of candidates of the previous pool that a replanning invalidated
+	 * @param count the number of candidates
+	 */
+	void recordInvalidated(int count) {
+		invalidated = count;
+	}
+
+	/**
+	 * Return the number of candidates of the previous pool that the replanning invalidated
+	 * @return the number of candidates, 0 if the plan is not a replanning
+	 */
+	public int getInvalidated() {
+		return invalidated;
+	}
+
+	/**
+	 * Return the selected paths
+	 * @return an unmodifiable list of paths
+	 */
+	public List<Path<Point>> getSolution() {
+		return solution;
+	}
+
+	/**
+	 * Return the candidate pool of the plan
+	 * @return the candidate table, null if the plan was not made by a solver
+	 */
+	CandidateTable candidates() {
+		return candidates;
+	}
+
+	/**
+	 * Return the arrivability of the solution
+	 * @return the arrivability
+	 */
+	public double getArrivability() {
+		return arrivability;
+	}
+
+	/**
+	 * Return the time of a stage
+	 * @param stage GENERATION, SELECTION or IMPROVEMENT
+	 * @return nanoseconds
+	 */
+	public long getTime(int stage) {
+		return times[stage];
+	}
+
+	/**
+	 * Test whether a stage was stopped by the deadline
+	 * @param stage GENERATION, SELECTION or IMPROVEMENT
+	 * @return true if the stage was stopped, false if it completed
+	 */
+	public boolean isTruncated(int stage) {
+		return truncated[stage];
+	}
+
+	/**
+	 * Test whether any stage was stopped by the deadline
+	 * @return true if some stage was stopped, false otherwise
+	 */
+	public boolean isTruncated() {
+		for (boolean stopped : truncated)
+			if (stopped)
+				return true;
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("Arrivability " + arrivability);
+		for (int stage = 0; stage < NUMBER_OF_STAGES; ++stage)
+			builder.append(", ").append(names[stage]).append(" ").append(times[stage] / 1000000).append(" ms")
+				.append(truncated[stage] ? " (truncated)" : "");
+		return builder.toString();
+	}
+}
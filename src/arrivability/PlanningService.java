@@ -0,0 +1,518 @@
+package arrivability;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A resident planning service. Maps are registered once by id, and the models and solvers
+ * built on them are kept between requests, so later missions reuse their failure groups,
+ * distance caches and shortcut caches instead of rebuilding them. Missions are posted as
+ * JSON to /plan on a local HTTP endpoint, and latency percentiles are reported at /stats.
+ */
+public class PlanningService {
+
+	private static final Logger logger = Logger.getLogger(PlanningService.class.getName());
+	private static final int LATENCY_WINDOW = 10000;         // recent requests kept for percentiles
+	private static final double[] PERCENTILES = {50, 90, 99, 100};
+	private static final int RADIUS = 1;                     // radius of failure groups of maps loaded by main
+	private static final int MAX_BODY = 1 << 20;             // bytes of the largest request
+	private static final int MAX_ROBOTS = 20;
+	private static final int MAX_GENERATE = 10000;
+	private static final int MAX_ITERATIONS = 1000;
+	private static final int MAX_MODELS = 16;                // models kept per map, least recently used evicted first
+	private static final int MAX_SOLVERS = 64;               // solvers kept per map, least recently used evicted first
+	private final Map<String, Workspace> maps = new ConcurrentHashMap<>();
+	private final LatencyRecorder latencies = new LatencyRecorder(LATENCY_WINDOW);
+	private HttpServer server;
+	private ExecutorService executor;
+	private volatile RequestCoalescer coalescer = null;       // null if requests are solved one by one
+
+	/**
+	 * Register a map. The distance cache of the graph is filled before the map can be
+	 * requested, since filling it replaces maps that concurrent requests read.
+	 * @param id map id used by requests
+	 * @param g graph of the map
+	 * @param fg failure group of the map
+	 */
+	public void register(String id, Graph<Point> g, FailureGroup<Point> fg) {
+		if (id == null || g == null || fg == null) {
+			logger.severe("Not a valid map");
+			throw new IllegalArgumentException("Not a valid map");
+		}
+		PathImprovement.shareDistances(g);
+		maps.put(id, new Workspace(g, fg));
+		logger.info("Map " + id + " registered with " + g.vertexSet().size() + " vertices");
+	}
+
+	/**
+	 * Coalesce requests arriving within a window: identical requests are solved once, and
+	 * requests with the same map, endpoints and generation share one candidate pool
+	 * @param window the window, null to solve requests one by one
+	 */
+	public synchronized void setCoalescingWindow(Duration window) {
+		if (coalescer != null)
+			coalescer.shutdown();
+		coalescer = window == null ? null : new RequestCoalescer(window);
+	}
+	
+	/**
+	 * Start serving on the loopback address
+	 * @param port the port, 0 for any free port
+	 * @param threads the number of requests served concurrently
+	 * @throws IOException if the port cannot be bound
+	 */
+	public synchronized void start(int port, int threads) throws IOException {
+		if (server != null) {
+			logger.severe("Service already started");
+			throw new IllegalStateException("Service already started");
+		}
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext("/plan", this::handlePlan);
+		server.createContext("/stats", this::handleStatistics);
+		executor = Executors.newFixedThreadPool(threads);
+		server.setExecutor(executor);
+		server.start();
+		logger.info("Planning service listening on port " + getPort());
+	}
+
+	/**
+	 * Stop serving
+	 */
+	public synchronized void stop() {
+		if (server == null)
+			return;
+		server.stop(0);
+		executor.shutdownNow();
+		server = null;
+		if (coalescer != null)
+			coalescer.shutdown();
+	}
+
+	/**
+	 * Return the port being served
+	 * @return the port
+	 */
+	public synchronized int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Plan a mission. A request has a map id, source and target as [x, y], and optionally the
+	 * number of robots and of requested robots, the model ("fixed" or "random") with its failure
+	 * probability and radius, the number of generated paths, the generation and selection modes,
+	 * the number of iterations of improvement, and a budget in milliseconds.
+	 * @param request the request
+	 * @return the plan with its paths, arrivability, stage times and truncated stages
+	 */
+	public Map<String, Object> plan(Map<String, Object> request) {
+		Workspace workspace = maps.get(text(request, "map", null));
+		if (workspace == null) {
+			logger.severe("Unknown map " + request.get("map"));
+			throw new IllegalArgumentException("Unknown map " + request.get("map"));
+		}
+		Point source = point(request, "source", workspace.g), target = point(request, "target", workspace.g);
+		int robots = integer(request, "robots", 3), required = integer(request, "request", 1);
+		if (robots < 1 || robots > MAX_ROBOTS || required < 1 || required > robots) {
+			logger.severe("Not a valid number of robots");
+			throw new IllegalArgumentException("Not a valid number of robots");
+		}
+		int generate = integer(request, "generate", 50), iterations = integer(request, "iterations", 3);
+		if (generate > MAX_GENERATE || iterations > MAX_ITERATIONS) {
+			logger.severe("Too many generated paths or iterations");
+			throw new IllegalArgumentException("Too many generated paths or iterations");
+		}
+		int generation = mode(request, "generation", PathGeneration.RANDOM, PathGeneration.NUMBER_OF_MODE);
+		int selection = mode(request, "selection", PathSelection.GREEDY, PathSelection.NUMBER_OF_MODE);
+		Duration budget = request.containsKey("budget") ? Duration.ofMillis(integer(request, "budget", 0))
+				: Duration.ofNanos(Long.MAX_VALUE);
+		String modelKey = Workspace.key(text(request, "model", "fixed"), number(request, "failure", 0.01), number(request, "radius", RADIUS));
+		FailureRate model = workspace.model(modelKey);
+		String key = modelKey + " " + robots + " " + required + " " + generate + " " + generation + " " + selection + " " + iterations;
+		MaximizeArrivability solver = workspace.solver(key, () -> 
+			new MaximizeArrivability(workspace.g, model, robots, required, generate, generation, selection, iterations));
+		RequestCoalescer current = coalescer;
+		if (current == null)
+			return toJson(solver.getSolution(source, target, budget));
+		String endpoints = request.get("map") + " " + source + " " + target;
+		try {
+			return toJson(current.submit(solver, endpoints + " " + generation + " " + generate, endpoints + " " + key, 
+					source, target, budget).join());
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw e;
+		}
+	}
+
+	/**
+	 * Report the number of requests and latency percentiles in milliseconds
+	 * @return the statistics
+	 */
+	public Map<String, Object> statistics() {
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("requests", latencies.getCount());
+		double[] values = latencies.percentiles(PERCENTILES);
+		for (int i = 0; i < PERCENTILES.length; ++i)
+			result.put(PERCENTILES[i] == 100 ? "max" : "p" + (int) PERCENTILES[i], values[i] / 1e6);
+		result.put("maps", new ArrayList<>(maps.keySet()));
+		RequestCoalescer current = coalescer;
+		if (current != null) {
+			result.put("coalesced", current.getRequests());
+			result.put("computations", current.getComputations());
+			result.put("pools", current.getPools());
+		}
+		return result;
+	}
+
+	/**
+	 * Convert a plan to JSON values
+	 * @param plan the plan
+	 * @return a map of JSON values
+	 */
+	private static Map<String, Object> toJson(Plan plan) {
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("arrivability", plan.getArrivability());
+		List<Object> paths = new ArrayList<>();
+		for (Path<Point> path : plan.getSolution()) {
+			List<Object> points = new ArrayList<>();
+			for (Point point : path)
+				points.add(new double[]{point.getX(), point.getY()});
+			paths.add(points);
+		}
+		result.put("paths", paths);
+		Map<String, Object> times = new LinkedHashMap<>();
+		List<Object> truncated = new ArrayList<>();
+		for (int stage = 0; stage < Plan.NUMBER_OF_STAGES; ++stage) {
+			times.put(Plan.names[stage], plan.getTime(stage) / 1e6);
+			if (plan.isTruncated(stage))
+				truncated.add(Plan.names[stage]);
+		}
+		result.put("times", times);
+		result.put("truncated", truncated);
+		return result;
+	}
+
+	/**
+	 * Serve /plan
+	 * @param exchange the exchange
+	 * @throws IOException if the response cannot be sent
+	 */
+	private void handlePlan(HttpExchange exchange) throws IOException {
+		long startTime = System.nanoTime();
+		// failed requests count as well, so that the percentiles are not biased
+		try {
+			if (!"POST".equals(exchange.getRequestMethod())) {
+				respond(exchange, 405, error("Use POST"));
+				return;
+			}
+			byte[] body = readAll(exchange);
+			if (body == null) {
+				respond(exchange, 413, error("Request too large"));
+				return;
+			}
+			Object request = Json.parse(new String(body, StandardCharsets.UTF_8));
+			if (!(request instanceof Map)) {
+				logger.fine("Not a JSON object");
+				throw new IllegalArgumentException("Not a JSON object");
+			}
+			@SuppressWarnings("unchecked")
+			Map<String, Object> response = plan((Map<String, Object>) request);
+			respond(exchange, 200, response);
+		} catch (IllegalArgumentException e) {
+			respond(exchange, 400, error(e.getMessage()));
+		} catch (RuntimeException e) {
+			logger.severe("Planning failed: " + e);
+			respond(exchange, 500, error(e.toString()));
+		} finally {
+			latencies.record(System.nanoTime() - startTime);
+		}
+	}
+
+	/**
+	 * Serve /stats
+	 * @param exchange the exchange
+	 * @throws IOException if the response cannot be sent
+	 */
+	private void handleStatistics(HttpExchange exchange) throws IOException {
+		if (!"GET".equals(exchange.getRequestMethod())) {
+			respond(exchange, 405, error("Use GET"));
+			return;
+		}
+		respond(exchange, 200, statistics());
+	}
+
+	/**
+	 * Send a JSON response
+	 * @param exchange the exchange
+	 * @param status HTTP status
+	 * @param body JSON values
+	 * @throws IOException if the response cannot be sent
+	 */
+	private static void respond(HttpExchange exchange, int status, Map<String, Object> body) throws IOException {
+		byte[] bytes = Json.write(body).getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	/**
+	 * Create an error response
+	 * @param message the message
+	 * @return JSON values
+	 */
+	private static Map<String, Object> error(String message) {
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("error", message);
+		return result;
+	}
+
+	/**
+	 * Read the body of a request to the end, unless it is larger than MAX_BODY
+	 * @param exchange the exchange
+	 * @return the bytes, or null if the body is too large
+	 * @throws IOException if the body cannot be read
+	 */
+	private static byte[] readAll(HttpExchange exchange) throws IOException {
+		String length = exchange.getRequestHeaders().getFirst("Content-Length");
+		// a body declared too large is refused before it is read
+		if (length != null && Long.parseLong(length.trim()) > MAX_BODY) {
+			logger.fine("Request too large");
+			return null;
+		}
+		InputStream in = exchange.getRequestBody();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		for (int n; (n = in.read(buffer)) > 0; ) {
+			if (out.size() + n > MAX_BODY) {
+				logger.fine("Request too large");
+				return null;
+			}
+			out.write(buffer, 0, n);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Read a number of a request
+	 * @param request the request
+	 * @param key the key
+	 * @param defaultValue the value if the key is absent
+	 * @return the number
+	 */
+	private static double number(Map<String, Object> request, String key, double defaultValue) {
+		Object value = request.containsKey(key) ? request.get(key) : defaultValue;
+		if (!(value instanceof Number) || !Double.isFinite(((Number) value).doubleValue())) {
+			logger.severe("Not a valid " + key);
+			throw new IllegalArgumentException("Not a valid " + key);
+		}
+		return ((Number) value).doubleValue();
+	}
+
+	/**
+	 * Read a non-negative integer of a request
+	 * @param request the request
+	 * @param key the key
+	 * @param defaultValue the value if the key is absent
+	 * @return the integer
+	 */
+	private static int integer(Map<String, Object> request, String key, int defaultValue) {
+		double value = number(request, key, defaultValue);
+		if (value != Math.rint(value) || value < 0 || value > Integer.MAX_VALUE) {
+			logger.severe("Not a valid " + key);
+			throw new IllegalArgumentException("Not a valid " + key);
+		}
+		return (int) value;
+	}
+
+	/**
+	 * Read a mode of a request
+	 * @param request the request
+	 * @param key the key
+	 * @param defaultValue the value if the key is absent
+	 * @param numberOfModes the number of modes
+	 * @return the mode
+	 */
+	private static int mode(Map<String, Object> request, String key, int defaultValue, int numberOfModes) {
+		int value = integer(request, key, defaultValue);
+		if (value >= numberOfModes) {
+			logger.severe("Unknown " + key + " mode " + value);
+			throw new IllegalArgumentException("Unknown " + key + " mode " + value);
+		}
+		return value;
+	}
+
+	/**
+	 * Read a string of a request
+	 * @param request the request
+	 * @param key the key
+	 * @param defaultValue the value if the key is absent, null if the key is required
+	 * @return the string
+	 */
+	private static String text(Map<String, Object> request, String key, String defaultValue) {
+		Object value = request.containsKey(key) ? request.get(key) : defaultValue;
+		if (!(value instanceof String)) {
+			logger.severe("Not a valid " + key);
+			throw new IllegalArgumentException("Not a valid " + key);
+		}
+		return (String) value;
+	}
+
+	/**
+	 * Read a vertex of a request
+	 * @param request the request
+	 * @param key the key
+	 * @param g the graph containing the vertex
+	 * @return the vertex
+	 */
+	private static Point point(Map<String, Object> request, String key, Graph<Point> g) {
+		Object value = request.get(key);
+		if (!(value instanceof List) || ((List<?>) value).size() != 2
+				|| !(((List<?>) value).get(0) instanceof Number) || !(((List<?>) value).get(1) instanceof Number)) {
+			logger.severe("Not a valid " + key);
+			throw new IllegalArgumentException("Not a valid " + key);
+		}
+		List<?> coordinates = (List<?>) value;
+		Point point = new Point(((Number) coordinates.get(0)).doubleValue(), ((Number) coordinates.get(1)).doubleValue());
+		if (!g.contains(point)) {
+			logger.severe("Not a vertex of the map " + point);
+			throw new IllegalArgumentException("Not a vertex of the map " + point);
+		}
+		return point;
+	}
+
+	/**
+	 * A registered map with the models and solvers built on it. Both are kept in bounded
+	 * caches, since their keys come from requests.
+	 * @author yuhanlyu
+	 *
+	 */
+	private static final class Workspace {
+		private final Graph<Point> g;
+		private final FailureGroup<Point> fg;
+		private final Map<String, FailureRate> models = cache(MAX_MODELS);
+		private final Map<String, MaximizeArrivability> solvers = cache(MAX_SOLVERS);
+
+		/**
+		 * Constructor
+		 * @param g graph
+		 * @param fg failure group
+		 */
+		Workspace(Graph<Point> g, FailureGroup<Point> fg) {
+			this.g = g;
+			this.fg = fg;
+		}
+
+		/**
+		 * Create the key of a model
+		 * @param name "fixed" or "random"
+		 * @param failure failure probability
+		 * @param radius radius of the random model
+		 * @return the key
+		 */
+		static String key(String name, double failure, double radius) {
+			if (!name.equals("fixed") && !name.equals("random")) {
+				logger.severe("Unknown model " + name);
+				throw new IllegalArgumentException("Unknown model " + name);
+			}
+			return name.equals("fixed") ? name + " " + failure : name + " " + failure + " " + radius;
+		}
+
+		/**
+		 * Return a model, built on first use
+		 * @param key the key of the model
+		 * @return the model
+		 */
+		FailureRate model(String key) {
+			return get(models, key, () -> {
+				String[] parameters = key.split(" ");
+				double failure = Double.parseDouble(parameters[1]);
+				return parameters[0].equals("fixed") ? new FixedRadius(fg, g, failure)
+						: new RandomRadius(fg, g, failure, Double.parseDouble(parameters[2]));
+			});
+		}
+
+		/**
+		 * Return a solver, built on first use
+		 * @param key the key of the solver
+		 * @param factory builder of the solver
+		 * @return the solver
+		 */
+		MaximizeArrivability solver(String key, Supplier<MaximizeArrivability> factory) {
+			return get(solvers, key, factory);
+		}
+
+		/**
+		 * Create a synchronized cache evicting the least recently used entry
+		 * @param capacity the number of entries kept
+		 * @return the cache
+		 */
+		private static <V> Map<String, V> cache(int capacity) {
+			return Collections.synchronizedMap(new LinkedHashMap<String, V>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, V> oldest) {
+					return size() > capacity;
+				}
+			});
+		}
+
+		/**
+		 * Return a cached value, built outside the lock of the cache on a miss
+		 * @param cache the cache
+		 * @param key the key
+		 * @param factory builder of the value
+		 * @return the value
+		 */
+		private static <V> V get(Map<String, V> cache, String key, Supplier<V> factory) {
+			V value = cache.get(key);
+			if (value != null)
+				return value;
+			value = factory.get();
+			V existing = cache.putIfAbsent(key, value);
+			return existing != null ? existing : value;
+		}
+	}
+
+	/**
+	 * Start a service with maps given as id=file, or a default grid map
+	 * @param args port followed by maps
+	 * @throws IOException if the port cannot be bound
+	 */
+	public static void main(String[] args) throws IOException {
+		PlanningService service = new PlanningService();
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+		for (int i = 1; i < args.length; ++i) {
+			String[] map = args[i].split("=", 2);
+			GridGraph g = (GridGraph) GraphLoader.getGraph(map[1]);
+			if (g == null) {
+				logger.severe("Cannot load map " + map[1]);
+				throw new IllegalArgumentException("Cannot load map " + map[1]);
+			}
+			service.register(map[0], g, new GridFailureGroup(g.getNumberOfRows(), g.getNumberOfColumns(), RADIUS));
+		}
+		if (args.length <= 1)
+			service.register("default", GraphLoader.getGraph(), new GridFailureGroup(MineField.ROW, MineField.COLUMN, RADIUS));
+		service.start(port, Runtime.getRuntime().availableProcessors());
+	}
+}
@@ -0,0 +1,116 @@
+package arrivability;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class PlanningServiceTest {
+
+	@Test
+	public void testHttp() throws IOException {
+		PlanningService service = new PlanningService();
+		service.register("grid", new GridGraph(8, 8), new GridFailureGroup(8, 8, 1));
+		// one thread serves requests in turn, so each is recorded before the next is served
+		service.start(0, 1);
+		try {
+			int port = service.getPort();
+			Map<String, Object> plan = body(request(port, "/plan", "POST", 
+					"{\"map\": \"grid\", \"source\": [0, 0], \"target\": [7, 7], \"robots\": 2, \"generate\": 10, \"iterations\": 1}", 200));
+			double arrivability = (Double) plan.get("arrivability");
+			assertTrue(arrivability > 0 && arrivability <= 1);
+			List<?> paths = (List<?>) plan.get("paths");
+			assertEquals(2, paths.size());
+			for (Object path : paths) {
+				List<?> points = (List<?>) path;
+				assertEquals(Json.parse("[0, 0]"), points.get(0));
+				assertEquals(Json.parse("[7, 7]"), points.get(points.size() - 1));
+			}
+			
+			assertNotNull(body(request(port, "/plan", "POST", "{\"map\": ", 400)).get("error"));
+			assertNotNull(body(request(port, "/plan", "POST", "{\"map\": \"unknown\", \"source\": [0, 0], \"target\": [7, 7]}", 400)).get("error"));
+			assertNotNull(body(request(port, "/plan", "POST", "{\"map\": \"grid\", \"source\": [0, 0], \"target\": [9, 9]}", 400)).get("error"));
+			assertTrue(tooLarge(port).startsWith("HTTP/1.1 413"));
+			
+			Map<String, Object> statistics = body(request(port, "/stats", "GET", null, 200));
+			// failed requests are counted as well
+			assertEquals(5.0, statistics.get("requests"));
+			assertEquals(Json.parse("[\"grid\"]"), statistics.get("maps"));
+			assertTrue((Double) statistics.get("max") >= (Double) statistics.get("p50"));
+			request(port, "/stats", "POST", "{}", 405);
+		} finally {
+			service.stop();
+		}
+	}
+	
+	/**
+	 * Send a request and check its status
+	 * @param port the port of the service
+	 * @param path the path of the request
+	 * @param method the method of the request
+	 * @param body the body of the request, null if none
+	 * @param status the expected status
+	 * @return the body of the response
+	 * @throws IOException if the request fails
+	 */
+	private static String request(int port, String path, String method, String body, int status) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL("http", InetAddress.getLoopbackAddress().getHostAddress(), port, path).openConnection();
+		connection.setRequestMethod(method);
+		if (body != null) {
+			connection.setDoOutput(true);
+			try (OutputStream out = connection.getOutputStream()) {
+				out.write(body.getBytes(StandardCharsets.UTF_8));
+			}
+		}
+		assertEquals(status, connection.getResponseCode());
+		try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			for (int n; (n = in.read(buffer)) > 0; )
+				out.write(buffer, 0, n);
+			return new String(out.toByteArray(), StandardCharsets.UTF_8);
+		} finally {
+			connection.disconnect();
+		}
+	}
+	
+	/**
+	 * Parse a JSON object
+	 * @param text the text
+	 * @return the object
+	 */
+	@SuppressWarnings("unchecked")
+	private static Map<String, Object> body(String text) {
+		return (Map<String, Object>) Json.parse(text);
+	}
+	
+	/**
+	 * Declare a body larger than the service accepts, without sending it
+	 * @param port the port of the service
+	 * @return the status line of the response
+	 * @throws IOException if the request fails
+	 */
+	private static String tooLarge(int port) throws IOException {
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+			socket.setSoTimeout(10000);
+			OutputStream out = socket.getOutputStream();
+			out.write(("POST /plan HTTP/1.1\r\nHost: localhost\r\nContent-Type: application/json\r\nContent-Length: " 
+					+ ((1 << 20) + 1) + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+			out.flush();
+			return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII)).readLine();
+		}
+	}
+}
@@ -2,16 +2,19 @@ package arrivability;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.SplittableRandom;
 import java.util.logging.Logger;
 
 public class RandomRadius extends FailureRate {
 	private static final Logger logger = Logger.getLogger(RandomRadius.class.getName());
+	private static final int MAX_TRIALS = 1 << 24;
+	private static final double CELL_COST = 2.0;     // rough nanoseconds per vertex of a distance field
 	private double failureProbability;
 	private double geometricParameter;
+	private double[] logFactors;                     // log(1 - p * (1 - q)^d) indexed by distance d
+	private int cutoff = Integer.MAX_VALUE;          // vertices at this distance or farther form the far field
+	private double truncation = 0;                   // epsilon of the cutoff, kept to recompute it
 
 	/**
 	 * Constructor 
@@ -22,90 +25,173 @@ public class RandomRadius extends FailureRate {
 	 */
 	public RandomRadius(FailureGroup<Point> group, Graph<Point> arg_g, double failure, double radius) {
 		super(group, arg_g);
-		if (!Double.isFinite(failure) || failure < 0 || failure > 1) {
-    		logger.severe("Not a valid probaiblity");
-    		throw new IllegalArgumentException("Not a valid probaiblity");
-    	}
 		if (!Double.isFinite(radius) || radius <= 0) {
     		logger.severe("Not a valid radius");
     		throw new IllegalArgumentException("Not a valid radius");
     	}
-		failureProbability = failure;
 		geometricParameter = 1.0 / (radius); 
+		logFactors = new double[fg.vertexSet().size()];
+		setFailure(failure);
 	}
 
 	@Override
-	public double arrivability(Iterable<Point> vertexset) {
-		Map<Point, Integer> distanceMap = fg.unweightedDistance(vertexset);
-		double arrivability = 1.0;
-		for (Point point : fg.vertexSet()) {
-			assert(distanceMap.get(point) != null);
-			if (distanceMap == null) 
-				System.out.println("Map is null");
-			if (distanceMap.get(point) == null) 
-				System.out.println("Distance is null" + fg.vertexSet().contains(point));
-			if (point == null)
-				System.out.println("Point is null");
-			arrivability *= (1 - failureProbability * (Math.pow(1 - geometricParameter, distanceMap.get(point))));
+	public void setFailure(double failure) {
+		if (!Double.isFinite(failure) || failure < 0 || failure > 1) {
+    		logger.severe("Not a valid probaiblity");
+    		throw new IllegalArgumentException("Not a valid probaiblity");
+    	}
+		failureProbability = failure;
+		for (int d = 0; d < logFactors.length; ++d)
+			logFactors[d] = Math.log1p(-failureProbability * Math.pow(1 - geometricParameter, d));
+		// the cutoff depends on the probability
+		setTruncation(truncation);
+	}
+
+	/**
+	 * Truncate searches at the distance where the blocking probability of all farther
+	 * vertices adds up to less than epsilon. Farther vertices are counted analytically as
+	 * if they were at the cutoff distance, so the probability that all paths of a subset
+	 * survive is underestimated by a relative error of at most epsilon, and the cost depends
+	 * on the neighborhood of the paths rather than the size of the map. For one path, or when
+	 * all paths are requested, arrivability is that single probability. Otherwise it is an
+	 * inclusion-exclusion sum of c_S P_S over subsets S with signed coefficients c_S, so its
+	 * error is bounded only by epsilon times the sum of |c_S| P_S and may have either sign.
+	 * @param epsilon the residual contribution of the far field, 0 disables truncation
+	 */
+	public void setTruncation(double epsilon) {
+		if (!(epsilon >= 0 && epsilon < 1)) {
+			logger.severe("Not a valid epsilon");
+			throw new IllegalArgumentException("Not a valid epsilon");
+		}
+		truncation = epsilon;
+		if (epsilon == 0) {
+			cutoff = Integer.MAX_VALUE;
+			return;
 		}
-		return arrivability;
+		int d = 0;
+		while (d < logFactors.length && logFactors.length * failureProbability * Math.pow(1 - geometricParameter, d) > epsilon)
+			++d;
+		cutoff = d;
+		logger.fine("Truncate searches at distance " + cutoff);
+	}
+
+	@Override
+	public double arrivability(Iterable<Point> vertexset) {
+		return arrivabilityFromFields(Arrays.asList(distanceField(vertexset, cutoff)), 1);
 	}
 
 	@Override
 	public double arrivability(List<Path<Point>> paths, int request) {
-		List<Collection<Point>> areas = new ArrayList<>();
-		for (int i = 0; i < paths.size(); ++i)
-			areas.add(paths.get(i).toCollection());
-		if (request == 1) {
-			return arrivability(areas);
-		}
-		int n = paths.size(), k = request;
-    	List<Collection<Point>> combineAreas = new ArrayList<>();
-    	// Gosper's hack
-    	for (int comb = (1 << k) - 1; comb < 1 << n;) {
-    		Collection<Point> forbiddenArea = new HashSet<>();
-    		for (int i = 0; i < n; ++i) {
-    			if (((comb >> i) & 1) == 1)
-    				forbiddenArea.addAll(areas.get(i));
-    		}
-    		combineAreas.add(forbiddenArea);
-    		int x = comb & -comb, y = comb + x;
-    	    comb = ((comb ^ y) / x >> 2) | y;
-    	}
-    	double result = arrivability(combineAreas);
-    	return result;
+		List<int[]> fields = new ArrayList<>();
+		for (Path<Point> path : paths)
+			fields.add(distanceField(path, cutoff));
+		return arrivabilityFromFields(fields, request);
 	}
 	
 	/**
-	 * Compute the arrivability of a list of paths
-	 * @param paths a list of paths
+	 * Compute arrivability from the distance fields of paths. The distance field of a
+	 * subset of paths is the element-wise minimum of the fields of its paths, so the
+	 * subsets are enumerated depth first and each one costs a single pass over the
+	 * vertices near the paths.
+	 * @param fields for each path, the distance from the path to every vertex of the failure group
+	 * @param request the number of request robots
 	 * @return arrivability
 	 */
-	private double arrivability(List<Collection<Point>> areas) {
-		int[] isSelected = new int[areas.size()];
-		isSelected[0] = 1;
-		Collection<Point> forbiddenArea = new HashSet<>();
-		// enumerate all subset and compute its contribution to arrivability
-		for (double arrivability = 0.0; ;) {
-			// Compute the arrivability for the subset
-			
-			int count = 0, i = 0;
-			for (Collection<Point> area : areas) {
-				if (isSelected[i] == 1) {
-					++count;
-					forbiddenArea.addAll(area);						
-				}
-			    ++i;
+	public double arrivabilityFromFields(List<int[]> fields, int request) {
+		int n = fields.size();
+		if (n == 0)
+			return 0.0;
+		// keep only vertices within the cutoff of some path, the rest is the far field
+		int numberOfVertices = fields.get(0).length, near = 0;
+		int[] nearIndex = new int[numberOfVertices];
+		for (int c = 0; c < numberOfVertices; ++c) {
+			int min = Integer.MAX_VALUE;
+			for (int[] field : fields)
+				min = Math.min(min, field[c]);
+			if (min < cutoff)
+				nearIndex[near++] = c;
+		}
+		List<int[]> nearFields = new ArrayList<>();
+		for (int[] field : fields) {
+			int[] nearField = new int[near];
+			for (int i = 0; i < near; ++i)
+				nearField[i] = Math.min(field[nearIndex[i]], cutoff);
+			nearFields.add(nearField);
+		}
+		double logFarField = cutoff == Integer.MAX_VALUE ? 0.0 : (numberOfVertices - near) * logFactor(cutoff);
+		int[][] subsetFields = new int[n + 1][near];
+		Arrays.fill(subsetFields[0], Integer.MAX_VALUE);
+		return sumOverSubsets(nearFields, coefficients(n, request), subsetFields, 0, 0, logFarField);
+	}
+	
+	/**
+	 * Sum the contribution of all subsets extending a subset by paths with larger indices
+	 * @param fields distance fields of paths
+	 * @param coefficient coefficients of inclusion-exclusion indexed by subset size
+	 * @param subsetFields distance fields of the subsets on the current branch
+	 * @param size the size of the current subset
+	 * @param next the smallest index of paths that can be added
+	 * @param logFarField the logarithm of the contribution of the far field
+	 * @return the contribution
+	 */
+	private double sumOverSubsets(List<int[]> fields, double[] coefficient, int[][] subsetFields, int size, int next, double logFarField) {
+		if (next == fields.size())
+			return 0.0;
+		double result = 0.0;
+		int[] parent = subsetFields[size], child = subsetFields[size + 1];
+		for (int j = next; j < fields.size(); ++j) {
+			int[] field = fields.get(j);
+			double logArrivability = logFarField;
+			for (int c = 0; c < child.length; ++c) {
+				child[c] = Math.min(parent[c], field[c]);
+				logArrivability += logFactor(child[c]);
 			}
-			arrivability += (count % 2 == 1 ? 1 : -1) * arrivability(forbiddenArea);
-			// Find the next subset
-			for (i = 0; i < areas.size() && isSelected[i] == 1; ++i)
-				isSelected[i] = 0;
-			if (i == areas.size())
-				return arrivability;
-			isSelected[i] = 1;
-			forbiddenArea.clear();
+			if (coefficient[size + 1] != 0)
+				result += coefficient[size + 1] * Math.exp(logArrivability);
+			result += sumOverSubsets(fields, coefficient, subsetFields, size + 1, j + 1, logFarField);
 		}
+		return result;
+	}
+	
+	/**
+	 * The logarithm of the probability that a vertex at a distance does not block
+	 * @param d the distance
+	 * @return log(1 - p * (1 - q)^d)
+	 */
+	private double logFactor(int d) {
+		return d < logFactors.length ? logFactors[d] : 0.0;
+	}
+	
+	@Override
+	protected double exactCost(List<Path<Point>> paths, int request) {
+		// one pass over the vertices near the paths for every subset of paths
+		double near = fg.vertexSet().size();
+		if (cutoff != Integer.MAX_VALUE) {
+			double length = 0.0;
+			for (Path<Point> path : paths)
+				length += path.size();
+			near = Math.min(near, length * (2.0 * cutoff + 1));
+		}
+		return CELL_COST * near * Math.pow(2, paths.size());
+	}
+	
+	@Override
+	public MonteCarlo monteCarlo(List<Path<Point>> paths) {
+		List<int[]> fields = new ArrayList<>();
+		for (Path<Point> path : paths)
+			fields.add(distanceField(path));
+		return new MonteCarlo(fields, failureProbability, geometricParameter);
+	}
+	
+	/**
+	 * Approximate failure rate by importance sampling, which suits rare failures
+	 * @param paths selected paths
+	 * @param request the number of request robots
+	 * @param relativeError target ratio of the standard error to the failure rate
+	 * @return approximated failure rate with its standard error
+	 */
+	public Estimate failureRateFromImportanceSampling(List<Path<Point>> paths, int request, double relativeError) {
+		return monteCarlo(paths).failureRate(request, relativeError, MAX_TRIALS, new SplittableRandom().nextLong());
 	}
 	
 	public static void main(String[] args) {
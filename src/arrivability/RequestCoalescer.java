@@ -0,0 +1,214 @@
+package arrivability;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * A coalescer of planning requests. Requests arriving within a window are gathered into a
+ * batch; identical requests are answered by one computation, and requests sharing a candidate
+ * pool, i.e., the same map, source, target and generation, select from one generated pool.
+ */
+public final class RequestCoalescer {
+
+	private static final Logger logger = Logger.getLogger(RequestCoalescer.class.getName());
+	private final long window;                                  // nanoseconds
+	private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+	private final ExecutorService workers = new ForkJoinPool();
+	private Map<String, Entry> batch = null;                    // pending requests by request key, guarded by this
+	private boolean stopped = false;                            // guarded by this
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder computations = new LongAdder();
+	private final LongAdder pools = new LongAdder();
+
+	/**
+	 * Constructor
+	 * @param window how long requests are gathered before being solved
+	 */
+	public RequestCoalescer(Duration window) {
+		if (window.isNegative()) {
+			logger.severe("Not a valid window");
+			throw new IllegalArgumentException("Not a valid window");
+		}
+		this.window = window.toNanos();
+	}
+
+	/**
+	 * Submit a request. Requests with the same request key must be identical, and requests
+	 * with the same pool key must have solvers generating the same kind of candidates.
+	 * @param solver the solver of the request
+	 * @param poolKey key of the candidate pool
+	 * @param requestKey key of the request
+	 * @param source source point
+	 * @param target target point
+	 * @param budget the time budget from now
+	 * @return the plan, completed when the batch of the request is solved
+	 */
+	public CompletableFuture<Plan> submit(MaximizeArrivability solver, String poolKey, String requestKey,
+			Point source, Point target, Duration budget) {
+		Deadline deadline = new Deadline(budget.toNanos());
+		requests.increment();
+		synchronized (this) {
+			if (stopped) {
+				logger.severe("Coalescer shut down");
+				throw new IllegalStateException("Coalescer shut down");
+			}
+			if (batch == null) {
+				timer.schedule(this::flush, window, TimeUnit.NANOSECONDS);
+				batch = new LinkedHashMap<>();
+			}
+			Entry entry = batch.computeIfAbsent(requestKey, k -> new Entry(solver, poolKey, source, target, deadline));
+			// an identical request is answered within the shorter of the two budgets
+			if (deadline.remaining() < entry.deadline.remaining())
+				entry.deadline = deadline;
+			return entry.plan;
+		}
+	}
+
+	/**
+	 * Solve the pending batch: one candidate pool per pool key, then one plan per request key
+	 */
+	private void flush() {
+		Map<String, Entry> entries;
+		synchronized (this) {
+			entries = batch;
+			batch = null;
+		}
+		if (entries == null)
+			return;
+		Map<String, List<Entry>> groups = new LinkedHashMap<>();
+		for (Entry entry : entries.values())
+			groups.computeIfAbsent(entry.poolKey, k -> new ArrayList<>()).add(entry);
+		computations.add(entries.size());
+		pools.add(groups.size());
+		logger.info("Coalesced " + entries.size() + " requests into " + groups.size() + " candidate pools");
+		for (List<Entry> group : groups.values()) {
+			Entry first = group.get(0);
+			long budget = Long.MAX_VALUE;
+			for (Entry entry : group)
+				budget = Math.min(budget, entry.deadline.remaining());
+			Duration poolBudget = Duration.ofNanos(budget);
+			CompletableFuture<List<Path<Point>>> candidates;
+			try {
+				candidates = CompletableFuture.supplyAsync(() -> first.solver.generate(first.source, first.target, poolBudget), workers);
+			} catch (RejectedExecutionException e) {
+				for (Entry entry : group)
+					entry.plan.completeExceptionally(e);
+				continue;
+			}
+			candidates.whenComplete((paths, e) -> {
+				for (Entry entry : group) {
+					if (e != null)
+						entry.plan.completeExceptionally(e);
+					else
+						solve(entry, () -> entry.solver.getSolutionFromCandidates(entry.source, entry.target,
+								paths, Duration.ofNanos(entry.deadline.remaining())));
+				}
+			});
+		}
+	}
+
+	/**
+	 * Solve a request on the workers and complete its plan, also when the workers reject it
+	 * @param entry the request
+	 * @param task the computation of the plan
+	 */
+	private void solve(Entry entry, Supplier<Plan> task) {
+		try {
+			CompletableFuture.supplyAsync(task, workers).whenComplete((plan, e) -> {
+				if (e == null)
+					entry.plan.complete(plan);
+				else
+					entry.plan.completeExceptionally(e);
+			});
+		} catch (RejectedExecutionException e) {
+			entry.plan.completeExceptionally(e);
+		}
+	}
+
+	/**
+	 * Stop the coalescer. Pending requests fail at once, requests being solved are finished,
+	 * and later submissions are rejected.
+	 */
+	public void shutdown() {
+		Map<String, Entry> entries;
+		synchronized (this) {
+			stopped = true;
+			entries = batch;
+			batch = null;
+		}
+		if (entries != null) {
+			IllegalStateException e = new IllegalStateException("Coalescer shut down");
+			for (Entry entry : entries.values())
+				entry.plan.completeExceptionally(e);
+		}
+		timer.shutdownNow();
+		workers.shutdown();
+	}
+
+	/**
+	 * Return the number of submitted requests
+	 * @return the number of requests
+	 */
+	public long getRequests() {
+		return requests.sum();
+	}
+
+	/**
+	 * Return the number of distinct requests solved
+	 * @return the number of computations
+	 */
+	public long getComputations() {
+		return computations.sum();
+	}
+
+	/**
+	 * Return the number of generated candidate pools
+	 * @return the number of pools
+	 */
+	public long getPools() {
+		return pools.sum();
+	}
+
+	/**
+	 * A distinct request of a batch and the plan waited for by its submitters
+	 * @author yuhanlyu
+	 *
+	 */
+	private static final class Entry {
+		private final MaximizeArrivability solver;
+		private final String poolKey;
+		private final Point source;
+		private final Point target;
+		private Deadline deadline;
+		private final CompletableFuture<Plan> plan = new CompletableFuture<>();
+
+		/**
+		 * Constructor
+		 * @param solver the solver
+		 * @param poolKey key of the candidate pool
+		 * @param source source point
+		 * @param target target point
+		 * @param deadline deadline of the request
+		 */
+		Entry(MaximizeArrivability solver, String poolKey, Point source, Point target, Deadline deadline) {
+			this.solver = solver;
+			this.poolKey = poolKey;
+			this.source = source;
+			this.target = target;
+			this.deadline = deadline;
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package arrivability;
+
+import static org.junit.Assert.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class RequestCoalescerTest {
+
+	@Test
+	public void testCoalesce() throws Exception {
+		MaximizeArrivability solver = solver();
+		RequestCoalescer coalescer = new RequestCoalescer(Duration.ofMillis(100));
+		Point source = new Point(0, 0), target = new Point(7, 7);
+		CompletableFuture<Plan> first = coalescer.submit(solver, "pool", "a", source, target, Duration.ofSeconds(30));
+		CompletableFuture<Plan> same = coalescer.submit(solver, "pool", "a", source, target, Duration.ofSeconds(30));
+		CompletableFuture<Plan> other = coalescer.submit(solver, "pool", "b", source, target, Duration.ofSeconds(30));
+		// identical requests wait for one plan
+		assertTrue(first == same);
+		for (CompletableFuture<Plan> plan : new CompletableFuture[]{first, other}) {
+			List<Path<Point>> solution = plan.get(60, TimeUnit.SECONDS).getSolution();
+			assertEquals(2, solution.size());
+			for (Path<Point> path : solution) {
+				assertEquals(source, path.get(0));
+				assertEquals(target, path.get(path.size() - 1));
+			}
+		}
+		assertEquals(3, coalescer.getRequests());
+		assertEquals(2, coalescer.getComputations());
+		assertEquals(1, coalescer.getPools());
+		coalescer.shutdown();
+	}
+	
+	@Test
+	public void testShutdown() throws Exception {
+		MaximizeArrivability solver = solver();
+		// requests still gathered in a batch fail at once
+		RequestCoalescer coalescer = new RequestCoalescer(Duration.ofHours(1));
+		CompletableFuture<Plan> pending = coalescer.submit(solver, "pool", "a", new Point(0, 0), new Point(7, 7), Duration.ofSeconds(30));
+		coalescer.shutdown();
+		assertTrue(pending.isCompletedExceptionally());
+		try {
+			coalescer.submit(solver, "pool", "a", new Point(0, 0), new Point(7, 7), Duration.ofSeconds(30));
+			fail("Submitted to a coalescer shut down");
+		} catch (IllegalStateException e) {
+		}
+		
+		// a batch being flushed when the workers shut down is solved or rejected, never left pending
+		for (long delay : new long[]{0, 5, 20, 50, 100}) {
+			coalescer = new RequestCoalescer(Duration.ofMillis(10));
+			List<CompletableFuture<Plan>> plans = new ArrayList<>();
+			for (int row = 0; row < 4; ++row)
+				plans.add(coalescer.submit(solver, "pool" + row, "request" + row, new Point(row, 0), new Point(7, 7), Duration.ofSeconds(30)));
+			Thread.sleep(delay);
+			coalescer.shutdown();
+			for (CompletableFuture<Plan> plan : plans) {
+				try {
+					assertEquals(2, plan.get(60, TimeUnit.SECONDS).getSolution().size());
+				} catch (ExecutionException e) {
+					assertTrue(plan.isCompletedExceptionally());
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Create a solver on a small grid whose candidates do not depend on the order of requests
+	 * @return the solver
+	 */
+	private static MaximizeArrivability solver() {
+		GridGraph g = new GridGraph(8, 8);
+		FixedRadius fr = new FixedRadius(new GridFailureGroup(8, 8, 1), g, 0.05);
+		fr.setEvaluator(FailureRate.EXACT);
+		return new MaximizeArrivability(g, fr, 2, 1, 10, PathGeneration.REWEIGHT, PathSelection.GREEDY, 2);
+	}
+}